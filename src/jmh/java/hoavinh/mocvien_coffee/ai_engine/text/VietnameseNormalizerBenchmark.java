@@ -0,0 +1,73 @@
+package hoavinh.mocvien_coffee.ai_engine.text;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chuẩn hóa một lượt toàn bộ menu mẫu: chuỗi replaceAll cũ so với bảng tra của VietnameseNormalizer
+ * Chạy: mvn -Pjmh test-compile exec:exec -Djmh.include=VietnameseNormalizerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VietnameseNormalizerBenchmark {
+
+    private static final List<String> MENU_NAMES = List.of(
+            "Cà Phê Sữa Đá", "Cà phê đen nóng", "Bạc Xỉu", "Trà Đào Cam Sả", "Trà Ô Long Sữa",
+            "Sinh Tố Bơ", "Nước Ép Dưa Hấu", "Sữa Chua Việt Quất", "Cappuccino Đặc Biệt", "Matcha Đá Xay",
+            "ESPRESSO", "Yaourt Dâu Tây", "Bánh Mì Ốp La", "Kem Dừa Sầu Riêng", "Chè Khúc Bạch",
+            "Nước Suối", "Trà Tắc Mật Ong", "Hướng Dương", "Americano (L)", "Trà sữa trân châu");
+
+    private final StringBuilder buffer = new StringBuilder(64);
+
+    @Benchmark
+    public void replaceAllChain(Blackhole blackhole) {
+        for (String name : MENU_NAMES) {
+            blackhole.consume(name.toLowerCase()
+                    .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
+                    .replaceAll("[èéẹẻẽêềếệểễ]", "e")
+                    .replaceAll("[ìíịỉĩ]", "i")
+                    .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
+                    .replaceAll("[ùúụủũưừứựửữ]", "u")
+                    .replaceAll("[ỳýỵỷỹ]", "y")
+                    .replaceAll("[đ]", "d")
+                    .trim());
+        }
+    }
+
+    @Benchmark
+    public void fold(Blackhole blackhole) {
+        for (String name : MENU_NAMES) {
+            blackhole.consume(VietnameseNormalizer.fold(name));
+        }
+    }
+
+    @Benchmark
+    public void foldCompact(Blackhole blackhole) {
+        for (String name : MENU_NAMES) {
+            blackhole.consume(VietnameseNormalizer.foldCompact(name));
+        }
+    }
+
+    @Benchmark
+    public void foldIntoReusedBuffer(Blackhole blackhole) {
+        for (String name : MENU_NAMES) {
+            VietnameseNormalizer.foldInto(name, buffer, true);
+            blackhole.consume(buffer.length());
+        }
+    }
+}
@@ -2,8 +2,10 @@ package hoavinh.mocvien_coffee;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MocvienCoffeeApplication {
 
     public static void main(String[] args) {
@@ -1,171 +1,220 @@
 package hoavinh.mocvien_coffee.ai_engine.advisors;
 
 import hoavinh.mocvien_coffee.ai_engine.service.ConversationState;
+import hoavinh.mocvien_coffee.ai_engine.text.KeywordAutomaton;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
+import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
+import java.util.Map;
+
+/**
+ * Detect intent bằng một automaton Aho–Corasick chứa keyword của mọi intent
+ * - Một lần duyệt message cho ra tất cả intent khớp, điểm và vị trí đầu tiên
+ * - Cấu hình thêm cho từng intent (tên property dạng kebab-case, ví dụ confirm-order):
+ *   app.ai.intent.<intent>.priority  (nhỏ hơn = ưu tiên hơn, mặc định theo thứ tự bên dưới)
+ *   app.ai.intent.<intent>.weight    (hệ số nhân điểm, mặc định 1.0)
+ *   app.ai.intent.<intent>.keywords  (keyword bổ sung, phân cách dấu phẩy, "keyword:điểm" để đặt điểm riêng)
+ */
 @Component
 public class OrderIntentAdvisor {
 
-    // Keywords cho từng intent
-    private static final List<String> GREETING_KEYWORDS = Arrays.asList(
-            "xin chào", "chào", "hello", "hi", "chào bạn", "chào em"
-    );
-
-    private static final List<String> VIEW_CART_KEYWORDS = Arrays.asList(
-            "giỏ hàng", "cart", "đơn hàng", "xem giỏ", "giỏ của tôi", "tôi đã chọn gì"
-    );
+    // Keywords cho từng intent, theo thứ tự ưu tiên mặc định
+    // Message chỉ được lowercase (giữ dấu) nên bản không dấu chỉ thêm khi không trùng từ khác (ví dụ "bo" ~ "bò")
+    private static final Map<OrderIntent, List<String>> DEFAULT_KEYWORDS = new LinkedHashMap<>();
+
+    static {
+        DEFAULT_KEYWORDS.put(OrderIntent.GREETING, Arrays.asList(
+                "xin chào", "chào", "hello", "hi", "chào bạn", "chào em", "xin chao"
+        ));
+        DEFAULT_KEYWORDS.put(OrderIntent.VIEW_CART, Arrays.asList(
+                "giỏ hàng", "cart", "đơn hàng", "xem giỏ", "giỏ của tôi", "tôi đã chọn gì", "gio hang", "xem gio"
+        ));
+        DEFAULT_KEYWORDS.put(OrderIntent.CANCEL, Arrays.asList(
+                "hủy", "huỷ", "cancel", "xóa", "xoá", "bỏ", "không cần", "thôi", "huy", "xoa", "khong can"
+        ));
+        DEFAULT_KEYWORDS.put(OrderIntent.CONFIRM_ORDER, Arrays.asList(
+                "xác nhận", "đặt hàng", "order", "ok", "đồng ý", "thanh toán", "checkout", "tôi muốn đặt",
+                "xac nhan", "dat hang", "dong y", "thanh toan"
+        ));
+        DEFAULT_KEYWORDS.put(OrderIntent.REMOVE_FROM_CART, Arrays.asList(
+                "xóa", "xoá", "bỏ", "remove", "không cần", "bớt", "xoa", "khong can"
+        ));
+        DEFAULT_KEYWORDS.put(OrderIntent.ASK_MENU, Arrays.asList(
+                "menu", "món", "có gì", "bán gì", "giá", "bao nhiêu", "thế nào", "co gi", "ban gi", "bao nhieu"
+        ));
+        // Có số lượng (1, 2, 3...) cũng tính là ADD_TO_CART, xem matchIntents
+        DEFAULT_KEYWORDS.put(OrderIntent.ADD_TO_CART, Arrays.asList(
+                "cho tôi", "tôi muốn", "lấy", "mua", "đặt", "cho toi", "toi muon", "lay"
+        ));
+    }
 
-    private static final List<String> CONFIRM_KEYWORDS = Arrays.asList(
-            "xác nhận", "đặt hàng", "order", "ok", "đồng ý", "thanh toán", "checkout", "tôi muốn đặt"
-    );
+    private final KeywordAutomaton<OrderIntent> automaton;
+    private final Map<OrderIntent, Integer> priorities = new EnumMap<>(OrderIntent.class);
+    private final Map<OrderIntent, Double> weights = new EnumMap<>(OrderIntent.class);
 
-    private static final List<String> CANCEL_KEYWORDS = Arrays.asList(
-            "hủy", "cancel", "xóa", "bỏ", "không cần", "thôi"
-    );
+    public OrderIntentAdvisor(Environment environment) {
+        KeywordAutomaton.Builder<OrderIntent> builder = KeywordAutomaton.<OrderIntent>builder().wholeWords(true);
+        int defaultPriority = 0;
+        for (Map.Entry<OrderIntent, List<String>> entry : DEFAULT_KEYWORDS.entrySet()) {
+            OrderIntent intent = entry.getKey();
+            String prefix = "app.ai.intent." + intent.name().toLowerCase().replace('_', '-');
 
-    private static final List<String> REMOVE_CART_KEYWORDS = Arrays.asList(
-            "xóa", "bỏ", "remove", "không cần", "bớt"
-    );
+            priorities.put(intent, environment.getProperty(prefix + ".priority", Integer.class, defaultPriority++));
+            weights.put(intent, environment.getProperty(prefix + ".weight", Double.class, 1.0));
 
-    private static final List<String> MENU_QUESTION_KEYWORDS = Arrays.asList(
-            "menu", "món", "có gì", "bán gì", "giá", "bao nhiêu", "thế nào"
-    );
+            entry.getValue().forEach(keyword -> builder.add(normalize(keyword), intent));
+            for (String extra : environment.getProperty(prefix + ".keywords", String[].class, new String[0])) {
+                addConfiguredKeyword(builder, extra, intent);
+            }
+        }
+        this.automaton = builder.build();
+    }
 
     /**
      * Detect intent từ message
+     * Intent khớp có priority nhỏ nhất thắng, cùng priority thì điểm cao hơn rồi vị trí sớm hơn thắng
      */
     public OrderIntent detectIntent(String message, ConversationState state) {
         if (message == null || message.isBlank()) {
             return OrderIntent.UNKNOWN;
         }
 
-        String normalized = normalize(message);
-
-        // Check greeting
-        if (isGreetingIntent(normalized)) {
-            return OrderIntent.GREETING;
-        }
-
-        // Check view cart
-        if (isViewCartIntent(normalized)) {
-            return OrderIntent.VIEW_CART;
-        }
-
-        // Check cancel
-        if (isCancelIntent(normalized)) {
-            return OrderIntent.CANCEL;
-        }
-
-        // Check confirm order
-        if (isConfirmIntent(normalized)) {
-            return OrderIntent.CONFIRM_ORDER;
+        boolean hasCart = state != null && !state.isCartEmpty();
+        for (IntentMatch match : matchIntents(message)) {
+            // Remove from cart cần có context của cart
+            if (match.intent() == OrderIntent.REMOVE_FROM_CART && !hasCart) {
+                continue;
+            }
+            return match.intent();
         }
 
-        // Check remove from cart (cần có context của cart)
-        if (state != null && !state.getCartItems().isEmpty() && isRemoveFromCartIntent(normalized)) {
-            return OrderIntent.REMOVE_FROM_CART;
-        }
+        return OrderIntent.UNKNOWN;
+    }
 
-        // Check menu question
-        if (isMenuQuestionIntent(normalized)) {
-            return OrderIntent.ASK_MENU;
-        }
+    /**
+     * Tất cả intent khớp trong message (một lần duyệt), đã sắp xếp theo thứ tự ưu tiên
+     */
+    public List<IntentMatch> matchIntents(String message) {
+        String normalized = normalize(message);
+        Map<OrderIntent, IntentMatch> byIntent = new EnumMap<>(OrderIntent.class);
 
-        // Check add to cart (nếu có số lượng hoặc từ khóa order)
-        if (isAddToCartIntent(normalized)) {
-            return OrderIntent.ADD_TO_CART;
+        for (KeywordAutomaton.Match<OrderIntent> match : automaton.findAll(normalized)) {
+            OrderIntent intent = match.value();
+            double score = match.weight() * weights.get(intent);
+            byIntent.merge(intent, new IntentMatch(intent, score, match.start()),
+                    (a, b) -> new IntentMatch(intent, a.score() + b.score(), Math.min(a.position(), b.position())));
         }
 
-        // Default: nếu có cart items và message không rõ ràng, coi như add to cart
-        if (state != null && !state.getCartItems().isEmpty()) {
-            // Có thể là update quantity hoặc add more
-            if (normalized.matches(".*\\d+.*")) {
-                return OrderIntent.UPDATE_QUANTITY;
-            }
+        // Có số lượng (1, 2, 3...) -> muốn đặt món
+        int digitPosition = firstDigit(normalized);
+        if (digitPosition >= 0) {
+            OrderIntent intent = OrderIntent.ADD_TO_CART;
+            byIntent.merge(intent, new IntentMatch(intent, weights.get(intent), digitPosition),
+                    (a, b) -> new IntentMatch(intent, a.score() + b.score(), Math.min(a.position(), b.position())));
         }
 
-        return OrderIntent.UNKNOWN;
+        List<IntentMatch> result = new ArrayList<>(byIntent.values());
+        result.sort(Comparator.comparingInt((IntentMatch match) -> priorities.get(match.intent()))
+                .thenComparing(Comparator.comparingDouble(IntentMatch::score).reversed())
+                .thenComparingInt(IntentMatch::position));
+        return result;
     }
 
     /**
      * Check greeting intent
      */
     public boolean isGreetingIntent(String message) {
-        String normalized = normalize(message);
-        return GREETING_KEYWORDS.stream().anyMatch(normalized::contains);
+        return hasIntent(message, OrderIntent.GREETING);
     }
 
     /**
      * Check view cart intent
      */
     public boolean isViewCartIntent(String message) {
-        String normalized = normalize(message);
-        return VIEW_CART_KEYWORDS.stream().anyMatch(normalized::contains);
+        return hasIntent(message, OrderIntent.VIEW_CART);
     }
 
     /**
      * Check confirm intent
      */
     public boolean isConfirmIntent(String message) {
-        String normalized = normalize(message);
-        return CONFIRM_KEYWORDS.stream().anyMatch(normalized::contains);
+        return hasIntent(message, OrderIntent.CONFIRM_ORDER);
     }
 
     /**
      * Check cancel intent
      */
     public boolean isCancelIntent(String message) {
-        String normalized = normalize(message);
-        return CANCEL_KEYWORDS.stream().anyMatch(normalized::contains);
+        return hasIntent(message, OrderIntent.CANCEL);
     }
 
     /**
      * Check remove from cart intent
      */
     public boolean isRemoveFromCartIntent(String message) {
-        String normalized = normalize(message);
-        return REMOVE_CART_KEYWORDS.stream().anyMatch(normalized::contains);
+        return hasIntent(message, OrderIntent.REMOVE_FROM_CART);
     }
 
     /**
      * Check menu question intent
      */
     public boolean isMenuQuestionIntent(String message) {
-        String normalized = normalize(message);
-        return MENU_QUESTION_KEYWORDS.stream().anyMatch(normalized::contains);
+        return hasIntent(message, OrderIntent.ASK_MENU);
     }
 
     /**
      * Check add to cart intent (có số lượng hoặc từ khóa order)
      */
     public boolean isAddToCartIntent(String message) {
-        String normalized = normalize(message);
-        // Nếu có số lượng (1, 2, 3...) hoặc từ "cho tôi", "tôi muốn", "lấy"
-        return normalized.matches(".*\\d+.*") ||
-               normalized.contains("cho tôi") ||
-               normalized.contains("tôi muốn") ||
-               normalized.contains("lấy") ||
-               normalized.contains("mua") ||
-               normalized.contains("đặt");
+        return hasIntent(message, OrderIntent.ADD_TO_CART);
+    }
+
+    private boolean hasIntent(String message, OrderIntent intent) {
+        return matchIntents(message).stream().anyMatch(match -> match.intent() == intent);
+    }
+
+    private void addConfiguredKeyword(KeywordAutomaton.Builder<OrderIntent> builder, String value, OrderIntent intent) {
+        String keyword = value;
+        double weight = 1.0;
+        int separator = value.lastIndexOf(':');
+        if (separator > 0) {
+            try {
+                weight = Double.parseDouble(value.substring(separator + 1).trim());
+                keyword = value.substring(0, separator);
+            } catch (NumberFormatException ignored) {
+                // Không phải "keyword:điểm", giữ nguyên cả chuỗi làm keyword
+            }
+        }
+        builder.add(normalize(keyword), intent, weight);
+    }
+
+    private static int firstDigit(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isDigit(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
-     * Normalize message
+     * Normalize message: lowercase + NFC (gõ dấu kiểu tổ hợp trên macOS/iOS vẫn khớp keyword)
      */
     private String normalize(String text) {
         if (text == null) return "";
-        return text.toLowerCase()
-                .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
-                .replaceAll("[èéẹẻẽêềếệểễ]", "e")
-                .replaceAll("[ìíịỉĩ]", "i")
-                .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
-                .replaceAll("[ùúụủũưừứựửữ]", "u")
-                .replaceAll("[ỳýỵỷỹ]", "y")
-                .replaceAll("[đ]", "d")
-                .trim();
+        return Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase().trim();
     }
-}
 
+    /**
+     * Intent khớp: tổng điểm các keyword và vị trí keyword đầu tiên trong message
+     */
+    public record IntentMatch(OrderIntent intent, double score, int position) {
+    }
+}
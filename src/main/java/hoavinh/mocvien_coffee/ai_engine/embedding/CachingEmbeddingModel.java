@@ -0,0 +1,310 @@
+package hoavinh.mocvien_coffee.ai_engine.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * EmbeddingModel bọc model thật (Ollama) với cache embedding
+ * Key = model name + text đã normalize (NFC, lowercase, gộp khoảng trắng)
+ * Tầng 1: LRU trong RAM (giới hạn số entry)
+ * Tầng 2 (tùy chọn): mỗi embedding một file nhị phân trên disk, giữ được qua restart
+ *   Giới hạn số file (maxDiskEntries), vượt quá thì xóa file lâu không dùng nhất (LRU theo mtime, đọc trúng thì touch)
+ *
+ * Mọi đường embedding của Spring AI (VectorStore.add, similaritySearch, embed(String)...) đều đi qua call(),
+ * nên chỉ cần cache ở call() là đủ
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final String defaultModelName;
+    private final Map<String, float[]> memoryCache;
+    private final Path diskDirectory;
+    // Tên file trên disk theo thứ tự dùng gần nhất, nạp từ mtime lúc khởi động
+    private final LinkedHashMap<String, Boolean> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxDiskEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param diskDirectory  thư mục cache trên disk, null = chỉ cache trong RAM
+     * @param maxDiskEntries số file tối đa trên disk
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String defaultModelName, int maxEntries,
+                                 Path diskDirectory, int maxDiskEntries) {
+        this.delegate = delegate;
+        this.defaultModelName = defaultModelName;
+        this.memoryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.diskDirectory = diskDirectory;
+        this.maxDiskEntries = Math.max(1, maxDiskEntries);
+        if (diskDirectory != null) {
+            try {
+                Files.createDirectories(diskDirectory);
+                loadDiskIndex();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create embedding cache directory " + diskDirectory, e);
+            }
+        }
+    }
+
+    /**
+     * Đọc danh sách file đã có (cũ -> mới theo mtime), dọn file tạm còn sót và cắt bớt nếu vượt giới hạn
+     */
+    private void loadDiskIndex() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(diskDirectory)) {
+            files = listing.toList();
+        }
+        List<Map.Entry<String, FileTime>> entries = new ArrayList<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(".emb")) {
+                entries.add(Map.entry(name, Files.getLastModifiedTime(file)));
+            }
+        }
+        entries.sort(Map.Entry.comparingByValue());
+        synchronized (diskIndex) {
+            for (Map.Entry<String, FileTime> entry : entries) {
+                diskIndex.put(entry.getKey(), Boolean.TRUE);
+            }
+        }
+        evictDiskOverflow();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String modelName = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel()
+                : defaultModelName;
+
+        float[][] outputs = new float[texts.size()][];
+        // key -> vị trí các text cần embed (gộp text trùng nhau trong cùng request)
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        Map<String, String> missingTexts = new LinkedHashMap<>();
+
+        for (int i = 0; i < texts.size(); i++) {
+            String key = cacheKey(modelName, texts.get(i));
+            float[] cached = lookup(key);
+            if (cached != null) {
+                outputs[i] = cached;
+                hits.incrementAndGet();
+            } else {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+                missingTexts.putIfAbsent(key, texts.get(i));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            misses.addAndGet(missing.size());
+            List<String> keys = new ArrayList<>(missing.keySet());
+            EmbeddingResponse response = delegate.call(
+                    new EmbeddingRequest(new ArrayList<>(missingTexts.values()), request.getOptions()));
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < keys.size(); i++) {
+                float[] vector = results.get(i).getOutput();
+                store(keys.get(i), vector);
+                for (int position : missing.get(keys.get(i))) {
+                    outputs[position] = vector;
+                }
+            }
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < outputs.length; i++) {
+            embeddings.add(new Embedding(outputs[i], i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getMemorySize() {
+        synchronized (memoryCache) {
+            return memoryCache.size();
+        }
+    }
+
+    public int getDiskSize() {
+        synchronized (diskIndex) {
+            return diskIndex.size();
+        }
+    }
+
+    /**
+     * Tìm trong RAM, nếu không có thì tìm trên disk (và đưa lại vào RAM)
+     */
+    private float[] lookup(String key) {
+        float[] vector;
+        synchronized (memoryCache) {
+            vector = memoryCache.get(key);
+        }
+        if (vector != null || diskDirectory == null) {
+            return vector;
+        }
+
+        vector = readFromDisk(key);
+        if (vector != null) {
+            synchronized (memoryCache) {
+                memoryCache.put(key, vector);
+            }
+        }
+        return vector;
+    }
+
+    private void store(String key, float[] vector) {
+        synchronized (memoryCache) {
+            memoryCache.put(key, vector);
+        }
+        if (diskDirectory != null) {
+            writeToDisk(key, vector);
+        }
+    }
+
+    private float[] readFromDisk(String key) {
+        String name = fileName(key);
+        synchronized (diskIndex) {
+            if (diskIndex.get(name) == null) {
+                return null;
+            }
+        }
+        Path file = diskDirectory.resolve(name);
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new java.io.BufferedInputStream(in))) {
+            int length = data.readInt();
+            float[] vector = new float[length];
+            for (int i = 0; i < length; i++) {
+                vector[i] = data.readFloat();
+            }
+            // Cập nhật mtime để thứ tự LRU giữ được qua restart
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return vector;
+        } catch (java.nio.file.NoSuchFileException e) {
+            // Vừa bị evict hoặc bị xóa tay
+            synchronized (diskIndex) {
+                diskIndex.remove(name);
+            }
+            return null;
+        } catch (IOException e) {
+            System.err.println("⚠️ Corrupted embedding cache file " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, float[] vector) {
+        String name = fileName(key);
+        Path file = diskDirectory.resolve(name);
+        try {
+            // Ghi ra file tạm rồi move để không bao giờ đọc phải file ghi dở
+            Path temp = Files.createTempFile(diskDirectory, "emb", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new java.io.BufferedOutputStream(out))) {
+                data.writeInt(vector.length);
+                for (float value : vector) {
+                    data.writeFloat(value);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("⚠️ Could not write embedding cache file " + file + ": " + e.getMessage());
+            return;
+        }
+        synchronized (diskIndex) {
+            diskIndex.put(name, Boolean.TRUE);
+        }
+        evictDiskOverflow();
+    }
+
+    /**
+     * Xóa file lâu không dùng nhất cho tới khi số file về lại maxDiskEntries
+     */
+    private void evictDiskOverflow() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (diskIndex) {
+            var iterator = diskIndex.keySet().iterator();
+            while (diskIndex.size() - evicted.size() > maxDiskEntries && iterator.hasNext()) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(diskDirectory.resolve(name));
+            } catch (IOException e) {
+                System.err.println("⚠️ Could not evict embedding cache file " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static String cacheKey(String modelName, String text) {
+        return modelName + '\u0000' + normalize(text);
+    }
+
+    /**
+     * Normalize text để "Có cà phê sữa không?" và "có  cà phê sữa không?" dùng chung embedding
+     */
+    private static String normalize(String text) {
+        if (text == null) return "";
+        return Normalizer.normalize(text, Normalizer.Form.NFC)
+                .trim()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + ".emb";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package hoavinh.mocvien_coffee.ai_engine.embedding;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pipeline embed + ghi document theo batch
+ * - Chia document thành batch kích thước cố định (app.ai.sync.batch-size)
+ * - Tối đa app.ai.sync.max-in-flight batch chạy song song (không dồn hết vào Ollama)
+ * - Batch lỗi được retry với exponential backoff, log tiến độ sau mỗi batch
+ */
+@Component
+public class EmbeddingBatchPipeline {
+
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    private final ExecutorService executor;
+
+    public EmbeddingBatchPipeline(@Value("${app.ai.sync.batch-size:32}") int batchSize,
+                                  @Value("${app.ai.sync.max-in-flight:2}") int maxInFlight,
+                                  @Value("${app.ai.sync.max-retries:3}") int maxRetries,
+                                  @Value("${app.ai.sync.retry-backoff-ms:500}") long retryBackoffMillis) {
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMillis = retryBackoffMillis;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Chạy pipeline và chờ tất cả batch hoàn tất
+     *
+     * @param documents document cần embed + ghi
+     * @param writer    ghi một batch (ví dụ vectorStore::add), được gọi lại khi retry
+     * @return kết quả gồm các document đã ghi thành công và các document lỗi sau khi hết retry
+     */
+    public BatchResult run(List<Document> documents, Consumer<List<Document>> writer) {
+        if (documents == null || documents.isEmpty()) {
+            return new BatchResult(List.of(), List.of());
+        }
+
+        List<List<Document>> batches = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i += batchSize) {
+            batches.add(documents.subList(i, Math.min(i + batchSize, documents.size())));
+        }
+
+        long start = System.currentTimeMillis();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger completedBatches = new AtomicInteger();
+        AtomicInteger completedDocuments = new AtomicInteger();
+        List<Document> succeeded = Collections.synchronizedList(new ArrayList<>());
+        List<Document> failed = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(batches.size());
+
+        for (List<Document> batch : batches) {
+            inFlight.acquireUninterruptibly();
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    if (writeWithRetry(batch, writer)) {
+                        succeeded.addAll(batch);
+                    } else {
+                        failed.addAll(batch);
+                    }
+                } finally {
+                    inFlight.release();
+                    int done = completedBatches.incrementAndGet();
+                    int docs = completedDocuments.addAndGet(batch.size());
+                    System.out.printf("📦 Embedding batch %d/%d done (%d/%d documents, %d ms)%n",
+                            done, batches.size(), docs, documents.size(), System.currentTimeMillis() - start);
+                }
+            }, executor));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return new BatchResult(List.copyOf(succeeded), List.copyOf(failed));
+    }
+
+    private boolean writeWithRetry(List<Document> batch, Consumer<List<Document>> writer) {
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            try {
+                writer.accept(batch);
+                return true;
+            } catch (Exception e) {
+                System.err.printf("⚠️ Embedding batch of %d documents failed (attempt %d/%d): %s%n",
+                        batch.size(), attempt + 1, maxRetries + 1, e.getMessage());
+                if (attempt < maxRetries) {
+                    try {
+                        Thread.sleep(retryBackoffMillis * (1L << attempt));
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Kết quả pipeline
+     */
+    public record BatchResult(List<Document> succeeded, List<Document> failed) {
+        public boolean hasFailures() {
+            return !failed.isEmpty();
+        }
+    }
+}
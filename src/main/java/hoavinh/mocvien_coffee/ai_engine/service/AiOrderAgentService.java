@@ -1,13 +1,17 @@
 package hoavinh.mocvien_coffee.ai_engine.service;
 
 import hoavinh.mocvien_coffee.ai_engine.advisors.OrderIntent;
+import hoavinh.mocvien_coffee.ai_engine.text.KeywordAutomaton;
+import hoavinh.mocvien_coffee.ai_engine.tools.OrderExtractionHelper;
+import hoavinh.mocvien_coffee.ai_engine.tools.OrderPhraseTokenizer;
 import hoavinh.mocvien_coffee.ai_engine.tools.AiOrderTools;
 import hoavinh.mocvien_coffee.dto.AiOrderRequest;
 import hoavinh.mocvien_coffee.dto.AiOrderResponse;
-import hoavinh.mocvien_coffee.dto.CartItemDto;
+import hoavinh.mocvien_coffee.dto.AiOrderStreamEvent;
 import hoavinh.mocvien_coffee.dto.OrderItemRequest;
 import hoavinh.mocvien_coffee.dto.OrderRequest;
 import hoavinh.mocvien_coffee.model.Order;
+import hoavinh.mocvien_coffee.model.Product;
 import hoavinh.mocvien_coffee.model.User;
 import hoavinh.mocvien_coffee.repository.UserRepository;
 import hoavinh.mocvien_coffee.service.OrderService;
@@ -15,35 +19,119 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
  * Agentic AI Order Service - LLM tự quyết định gọi tools
+ * Xử lý theo 2 tầng:
+ * - Fast path: rule + template cho chào hỏi, xem giỏ, thêm món nhận ra được trong menu, xóa món, xác nhận đơn
+ * - LLM: chỉ khi fast path không xử lý được (tỉ lệ xem FastPathMetrics)
  */
 @Service
 public class AiOrderAgentService {
 
+    /**
+     * Keyword trong message của khách (QUANTITY = có chữ số, không nằm trong automaton)
+     * QUESTION: khách đang hỏi ("bao nhiêu", "giá", "hỏi", dấu ?), không tự thêm món
+     */
+    private enum MessageKeyword {
+        VIEW_CART, REMOVE, ORDER_VERB, PLACE, MENU, CONFIRM, OK, GREETING, QUANTITY, QUESTION
+    }
+
+    // Từ mở đầu câu đặt món khi khách không gõ chữ số ("cho em hai ly trà đào")
+    private static final Set<String> ORDER_START_WORDS = Set.of("cho", "đặt", "lấy", "thêm", "gọi", "order");
+
+    // "không" ngoài ghi chú món ("không lấy trà nữa", "có trà đào không") là phủ định / câu hỏi
+    private static final String NEGATION = "không";
+    private static final Set<String> QUESTION_ENDINGS = Set.of("không", "chưa");
+
+    // Chữ cái ngoài lời chào tối đa để vẫn coi là chỉ chào ("chào em ạ", "hello shop")
+    private static final int GREETING_MAX_EXTRA_LETTERS = 6;
+
+    private static final String GREETING_MESSAGE = "Dạ em chào anh/chị! Em là nhân viên AI của quán Mộc Miên. " +
+            "Anh/chị muốn xem menu hay đặt món luôn ạ? Ví dụ: 'cho em 2 cà phê sữa'.";
+
+    // Toàn bộ keyword của các nhánh tool + confirm order, compile một lần
+    private static final KeywordAutomaton<MessageKeyword> MESSAGE_KEYWORDS = KeywordAutomaton.<MessageKeyword>builder()
+            .wholeWords(true)
+            .add("giỏ hàng", MessageKeyword.VIEW_CART)
+            .add("cart", MessageKeyword.VIEW_CART)
+            .add("xóa", MessageKeyword.REMOVE)
+            .add("xoá", MessageKeyword.REMOVE)
+            .add("bỏ", MessageKeyword.REMOVE)
+            .add("cho", MessageKeyword.ORDER_VERB)
+            .add("đặt", MessageKeyword.ORDER_VERB)
+            .add("muốn", MessageKeyword.ORDER_VERB)
+            .add("đặt", MessageKeyword.PLACE)
+            .add("menu", MessageKeyword.MENU)
+            .add("món", MessageKeyword.MENU)
+            .add("có gì", MessageKeyword.MENU)
+            .add("đặt hàng", MessageKeyword.CONFIRM)
+            .add("xác nhận", MessageKeyword.CONFIRM)
+            .add("thanh toán", MessageKeyword.CONFIRM)
+            .add("checkout", MessageKeyword.CONFIRM)
+            .add("ok", MessageKeyword.OK)
+            .add("xin chào", MessageKeyword.GREETING)
+            .add("chào", MessageKeyword.GREETING)
+            .add("hello", MessageKeyword.GREETING)
+            .add("hi", MessageKeyword.GREETING)
+            .add("hỏi", MessageKeyword.QUESTION)
+            .add("bao nhiêu", MessageKeyword.QUESTION)
+            .add("giá", MessageKeyword.QUESTION)
+            .build();
+
+    // Keyword trong câu trả lời (của tool hoặc LLM) để đoán intent
+    private static final KeywordAutomaton<OrderIntent> RESPONSE_KEYWORDS = KeywordAutomaton.<OrderIntent>builder()
+            .wholeWords(true)
+            .add("đã thêm", OrderIntent.ADD_TO_CART)
+            .add("thêm vào giỏ", OrderIntent.ADD_TO_CART)
+            .add("giỏ hàng", OrderIntent.VIEW_CART)
+            .add("xóa", OrderIntent.REMOVE_FROM_CART)
+            .add("bỏ", OrderIntent.REMOVE_FROM_CART)
+            .add("menu", OrderIntent.ASK_MENU)
+            .add("món", OrderIntent.ASK_MENU)
+            .build();
+
     private final ChatClient chatClient;
     private final ConversationService conversationService;
     private final OrderService orderService;
     private final UserRepository userRepository;
     private final AiOrderTools aiOrderTools;
+    private final LlmRequestScheduler llmRequestScheduler;
+    private final MenuContextService menuContextService;
+    private final FastPathMetrics fastPathMetrics;
+    private final SessionTurnGate sessionTurnGate;
 
     public AiOrderAgentService(
             ChatClient.Builder chatClientBuilder,
             ConversationService conversationService,
             OrderService orderService,
             UserRepository userRepository,
-            AiOrderTools aiOrderTools) {
+            AiOrderTools aiOrderTools,
+            LlmRequestScheduler llmRequestScheduler,
+            MenuContextService menuContextService,
+            FastPathMetrics fastPathMetrics,
+            SessionTurnGate sessionTurnGate) {
         
         this.conversationService = conversationService;
         this.orderService = orderService;
         this.userRepository = userRepository;
         this.aiOrderTools = aiOrderTools;
+        this.llmRequestScheduler = llmRequestScheduler;
+        this.menuContextService = menuContextService;
+        this.fastPathMetrics = fastPathMetrics;
+        this.sessionTurnGate = sessionTurnGate;
 
         // ChatClient cho LLM responses
         this.chatClient = chatClientBuilder
@@ -59,9 +147,91 @@ public class AiOrderAgentService {
     /**
      * Xử lý message từ khách hàng - Agentic Flow
      * LLM tự quyết định gọi tools nào
+     * Các message của cùng session được xử lý lần lượt (SessionTurnGate)
      */
     public AiOrderResponse processCustomerMessage(AiOrderRequest request) {
+        try (SessionTurnGate.Turn turn = sessionTurnGate.enter(request.sessionId())) {
+            return processTurn(request);
+        }
+    }
+
+    private AiOrderResponse processTurn(AiOrderRequest request) {
+        String message = request.message();
+        ConversationState state = prepareConversation(request);
+        Set<MessageKeyword> keywords = scanMessage(message);
+
+        // Tầng 1: rule + template, không gọi LLM
+        FastPathReply reply = resolveFastPath(message, keywords, state);
+        if (reply != null) {
+            fastPathMetrics.recordFastPath(reply.intent());
+            return finishResponse(keywords, reply.intent(), reply.message(), state);
+        }
+        // Confirm order thì câu trả lời của LLM bị bỏ đi, không cần generate
+        if (isConfirmOrder(keywords)) {
+            fastPathMetrics.recordFastPath(OrderIntent.CONFIRM_ORDER);
+            return handleConfirmOrder(state);
+        }
+
+        // Tầng 2: dùng LLM để trả lời chung (qua scheduler, quá tải thì trả lời xin lỗi ngay)
+        fastPathMetrics.recordLlmEscalation();
+        Prompt prompt = buildLlmPrompt(message, state);
+        String aiMessage;
+        try {
+            aiMessage = llmRequestScheduler.call(llmPriority(state),
+                    () -> chatClient.prompt(prompt).call().content());
+        } catch (LlmOverloadedException e) {
+            aiMessage = LlmOverloadedException.FRIENDLY_MESSAGE;
+        }
+
+        return finishResponse(keywords, null, aiMessage, state);
+    }
+
+    /**
+     * Bản streaming của processCustomerMessage
+     * - Nhánh LLM: phát từng token ngay khi model sinh ra (chatClient.stream())
+     * - Fast path / confirm order: kết quả có ngay nên phát một token duy nhất
+     * - Event cuối luôn là AiOrderResponse đầy đủ (giỏ hàng, tổng tiền, orderId)
+     * - Giữ lượt của session tới khi stream kết thúc / lỗi / client hủy
+     */
+    public Flux<AiOrderStreamEvent> streamCustomerMessage(AiOrderRequest request) {
+        return Flux.using(() -> sessionTurnGate.enter(request.sessionId()),
+                turn -> streamTurn(request),
+                SessionTurnGate.Turn::close);
+    }
+
+    private Flux<AiOrderStreamEvent> streamTurn(AiOrderRequest request) {
         String message = request.message();
+        ConversationState state = prepareConversation(request);
+        Set<MessageKeyword> keywords = scanMessage(message);
+
+        FastPathReply reply = resolveFastPath(message, keywords, state);
+        if (reply != null || isConfirmOrder(keywords)) {
+            fastPathMetrics.recordFastPath(reply != null ? reply.intent() : OrderIntent.CONFIRM_ORDER);
+            return Flux.defer(() -> {
+                AiOrderResponse response = reply != null
+                        ? finishResponse(keywords, reply.intent(), reply.message(), state)
+                        : handleConfirmOrder(state);
+                return Flux.just(AiOrderStreamEvent.token(response.message()), AiOrderStreamEvent.done(response));
+            });
+        }
+
+        fastPathMetrics.recordLlmEscalation();
+        Prompt prompt = buildLlmPrompt(message, state);
+        StringBuilder fullMessage = new StringBuilder();
+        return llmRequestScheduler.stream(llmPriority(state),
+                        () -> chatClient.prompt(prompt).stream().content())
+                .onErrorResume(LlmOverloadedException.class,
+                        e -> Flux.just(LlmOverloadedException.FRIENDLY_MESSAGE))
+                .doOnNext(fullMessage::append)
+                .map(AiOrderStreamEvent::token)
+                .concatWith(Mono.fromCallable(() ->
+                        AiOrderStreamEvent.done(finishResponse(keywords, null, fullMessage.toString(), state))));
+    }
+
+    /**
+     * Lấy conversation của session và cập nhật số bàn nếu có
+     */
+    private ConversationState prepareConversation(AiOrderRequest request) {
         String sessionId = request.sessionId();
         String tableNumber = request.tableNumber();
 
@@ -71,61 +241,221 @@ public class AiOrderAgentService {
             conversationService.setTableNumber(sessionId, tableNumber);
             state.setTableNumber(tableNumber);
         }
+        return state;
+    }
 
-        // Build context cho LLM
-        String context = buildContext(state);
+    /**
+     * Keyword của message (một lần duyệt automaton), dùng cho cả chọn tool lẫn check confirm order
+     */
+    private Set<MessageKeyword> scanMessage(String message) {
+        Set<MessageKeyword> keywords = EnumSet.noneOf(MessageKeyword.class);
+        String lower = message.toLowerCase();
+        BitSet greeting = new BitSet(lower.length());
+        for (KeywordAutomaton.Match<MessageKeyword> match : MESSAGE_KEYWORDS.findAll(lower)) {
+            keywords.add(match.value());
+            if (match.value() == MessageKeyword.GREETING) {
+                greeting.set(match.start(), match.end());
+            }
+        }
+        if (message.chars().anyMatch(Character::isDigit)) {
+            keywords.add(MessageKeyword.QUANTITY);
+        }
+        if (message.indexOf('?') >= 0) {
+            keywords.add(MessageKeyword.QUESTION);
+        }
+        // GREETING chỉ giữ khi message gần như chỉ có lời chào, "chào em, quán có wifi không" vẫn cần trả lời thật
+        if (keywords.contains(MessageKeyword.GREETING)) {
+            int extraLetters = 0;
+            for (int i = 0; i < lower.length(); i++) {
+                if (!greeting.get(i) && Character.isLetter(lower.charAt(i))) {
+                    extraLetters++;
+                }
+            }
+            if (extraLetters > GREETING_MAX_EXTRA_LETTERS) {
+                keywords.remove(MessageKeyword.GREETING);
+            }
+        }
+        return keywords;
+    }
 
-        // Agentic Flow: Phân tích message và gọi tools phù hợp
-        String aiMessage;
-        
-        // Simple heuristic để detect intent và gọi tools
-        String lowerMessage = message.toLowerCase();
-        
-        if (lowerMessage.contains("giỏ hàng") || lowerMessage.contains("cart")) {
+    /**
+     * Fast path: xử lý message bằng rule + template/tool, intent biết ngay không cần đoán từ câu trả lời
+     *
+     * @return câu trả lời và intent, null nếu không rule nào chắc chắn (cần hỏi LLM)
+     */
+    private FastPathReply resolveFastPath(String message, Set<MessageKeyword> keywords, ConversationState state) {
+        String sessionId = state.getSessionId();
+        if (keywords.contains(MessageKeyword.VIEW_CART)) {
             // Gọi viewCart tool
-            aiMessage = aiOrderTools.viewCart().apply(sessionId);
-        } else if (lowerMessage.contains("xóa") || lowerMessage.contains("bỏ")) {
+            return new FastPathReply(OrderIntent.VIEW_CART, aiOrderTools.viewCart().apply(sessionId));
+        }
+        if (keywords.contains(MessageKeyword.REMOVE)) {
             // Extract item name và gọi removeFromCart
             String itemName = extractItemName(message);
-            aiMessage = aiOrderTools.removeFromCart()
-                    .apply(new hoavinh.mocvien_coffee.ai_engine.tools.AiOrderTools.RemoveFromCartRequest(itemName, sessionId));
-        } else if (lowerMessage.matches(".*\\d+.*") && 
-                   (lowerMessage.contains("cho") || lowerMessage.contains("đặt") || lowerMessage.contains("muốn"))) {
-            // Có vẻ như muốn đặt món - extract và gọi addToCart
-            String itemName = extractItemName(message);
-            Integer quantity = extractQuantity(message);
-            aiMessage = aiOrderTools.addToCart()
-                    .apply(new hoavinh.mocvien_coffee.ai_engine.tools.AiOrderTools.AddToCartRequest(itemName, quantity, sessionId));
-        } else if (lowerMessage.contains("menu") || lowerMessage.contains("món") || lowerMessage.contains("có gì")) {
+            return new FastPathReply(OrderIntent.REMOVE_FROM_CART, aiOrderTools.removeFromCart()
+                    .apply(new hoavinh.mocvien_coffee.ai_engine.tools.AiOrderTools.RemoveFromCartRequest(itemName, sessionId)));
+        }
+        if (!keywords.contains(MessageKeyword.QUESTION)
+                && (keywords.contains(MessageKeyword.QUANTITY) || keywords.contains(MessageKeyword.ORDER_VERB))) {
+            String added = addRecognizedItems(message, keywords, sessionId);
+            if (added != null) {
+                return new FastPathReply(OrderIntent.ADD_TO_CART, added);
+            }
+        }
+        if (keywords.contains(MessageKeyword.MENU)) {
             // Hỏi về menu - gọi getMenu
-            aiMessage = aiOrderTools.getMenu().apply(message);
-        } else {
-            // Dùng LLM để trả lời chung
-            String promptText = """
-                    Context:
-                    {context}
-                    
-                    Khách hàng nói: {message}
-                    
-                    Hãy trả lời một cách thân thiện, hỏi xem khách muốn gì.
-                    """;
-
-            PromptTemplate template = new PromptTemplate(promptText);
-            Prompt prompt = template.create(Map.of(
-                    "context", context,
-                    "message", message
-            ));
-
-            aiMessage = chatClient.prompt(prompt)
-                    .call()
-                    .content();
-        }
-
-        // Detect intent từ response (có thể cải thiện)
-        OrderIntent intent = detectIntentFromResponse(aiMessage, state);
+            return new FastPathReply(OrderIntent.ASK_MENU, aiOrderTools.getMenu().apply(message));
+        }
+        if (keywords.contains(MessageKeyword.GREETING)) {
+            return new FastPathReply(OrderIntent.GREETING, GREETING_MESSAGE);
+        }
+        return null;
+    }
+
+    /**
+     * Thêm món: tách từng món (số lượng + tên) và tìm tên trong name index của menu snapshot
+     * - Có chữ số + động từ đặt ("cho em 2 ...") thì chắc chắn là đặt món: thêm các món nhận ra,
+     *   báo lại cho khách các món không có trong menu
+     * - Không có cả hai thì câu phải mở đầu bằng động từ đặt hoặc mọi món đều có số lượng ("hai ly trà đào",
+     *   "trà đào x2"), và mọi món đều phải nhận ra trong menu
+     * - Phủ định / câu hỏi ("không lấy trà nữa", "có trà đào không") và mọi trường hợp không chắc để LLM trả lời
+     *
+     * @return câu trả lời, null nếu không chắc là đặt món
+     */
+    private String addRecognizedItems(String message, Set<MessageKeyword> keywords, String sessionId) {
+        boolean explicitOrder = keywords.contains(MessageKeyword.QUANTITY) && keywords.contains(MessageKeyword.ORDER_VERB);
+        List<OrderPhraseTokenizer.Segment> segments = OrderPhraseTokenizer.tokenize(message);
+        String lower = Normalizer.normalize(message, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        if (segments.isEmpty() || isNegatedOrAsked(lower, segments)) {
+            return null;
+        }
+        if (!explicitOrder && (keywords.contains(MessageKeyword.MENU) || !startsLikeOrder(lower, segments))) {
+            return null;
+        }
+
+        MenuNameIndex menu = menuContextService.getSnapshot().nameIndex();
+        List<Product> products = new ArrayList<>(segments.size());
+        List<String> unmatched = new ArrayList<>();
+        for (OrderPhraseTokenizer.Segment segment : segments) {
+            Product product = OrderExtractionHelper.findProduct(segment.productPhrase(), menu);
+            products.add(product);
+            if (product == null) {
+                unmatched.add(segment.productPhrase());
+            }
+        }
+        // Không món nào nhận ra, hoặc câu không chắc là đặt món mà còn món lạ -> LLM
+        if (unmatched.size() == segments.size() || (!explicitOrder && !unmatched.isEmpty())) {
+            return null;
+        }
+
+        List<String> replies = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            OrderPhraseTokenizer.Segment segment = segments.get(i);
+            Product product = products.get(i);
+            if (product != null) {
+                replies.add(aiOrderTools.addProductToCart(product, segment.quantity(), segment.note(), sessionId));
+            }
+        }
+        if (!unmatched.isEmpty()) {
+            replies.add(unmatched.stream()
+                    .map(phrase -> "'" + phrase + "'")
+                    .collect(Collectors.joining(", ",
+                            "Em chưa tìm thấy món ", " trong menu. Anh/chị xem menu hoặc nói lại tên món giúp em nhé.")));
+        }
+        return String.join("\n", replies);
+    }
+
+    /**
+     * Có "không" ngoài ghi chú món, hoặc câu kết thúc bằng "không" / "chưa" (câu hỏi có/không, "có bạc xỉu chưa")
+     */
+    private static boolean isNegatedOrAsked(String lower, List<OrderPhraseTokenizer.Segment> segments) {
+        int inNotes = 0;
+        for (OrderPhraseTokenizer.Segment segment : segments) {
+            if (segment.note() != null) {
+                inNotes += countWord(Normalizer.normalize(segment.note(), Normalizer.Form.NFC)
+                        .toLowerCase(Locale.ROOT), NEGATION);
+            }
+        }
+        if (countWord(lower, NEGATION) > inNotes) {
+            return true;
+        }
+        // Từ cuối câu (tokenizer đã bỏ "ạ", "nhé"...) nằm ở ghi chú hoặc tên của món cuối
+        OrderPhraseTokenizer.Segment last = segments.get(segments.size() - 1);
+        String tail = Normalizer.normalize(last.note() != null ? last.note() : last.productPhrase(), Normalizer.Form.NFC)
+                .toLowerCase(Locale.ROOT);
+        return QUESTION_ENDINGS.contains(tail.substring(tail.lastIndexOf(' ') + 1));
+    }
+
+    /**
+     * Câu mở đầu bằng động từ đặt món, hoặc món nào cũng có số lượng rõ ràng
+     */
+    private static boolean startsLikeOrder(String lower, List<OrderPhraseTokenizer.Segment> segments) {
+        int end = 0;
+        String trimmed = lower.strip();
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        return ORDER_START_WORDS.contains(trimmed.substring(0, end))
+                || segments.stream().allMatch(OrderPhraseTokenizer.Segment::explicitQuantity);
+    }
+
+    private static int countWord(String text, String word) {
+        int count = 0;
+        for (int from = text.indexOf(word); from >= 0; from = text.indexOf(word, from + word.length())) {
+            int end = from + word.length();
+            boolean startsWord = from == 0 || !Character.isLetter(text.charAt(from - 1));
+            boolean endsWord = end == text.length() || !Character.isLetter(text.charAt(end));
+            if (startsWord && endsWord) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Prompt cho LLM khi không tool nào khớp
+     */
+    private Prompt buildLlmPrompt(String message, ConversationState state) {
+        String promptText = """
+                Context:
+                {context}
+                
+                Khách hàng nói: {message}
+                
+                Hãy trả lời một cách thân thiện, hỏi xem khách muốn gì.
+                """;
+
+        PromptTemplate template = new PromptTemplate(promptText);
+        return template.create(Map.of(
+                "context", buildContext(state),
+                "message", message
+        ));
+    }
+
+    /**
+     * Nhánh LLM là nói chuyện tự do (không tool nào khớp)
+     * Khách đang có món trong giỏ thì ưu tiên hơn vì sắp chốt đơn
+     */
+    private LlmRequestScheduler.Priority llmPriority(ConversationState state) {
+        return state.isCartEmpty()
+                ? LlmRequestScheduler.Priority.LOW
+                : LlmRequestScheduler.Priority.NORMAL;
+    }
+
+    /**
+     * Detect intent, xử lý confirm order và build response từ câu trả lời hoàn chỉnh
+     *
+     * @param intent intent của fast path, null nếu câu trả lời đến từ LLM (phải đoán từ response)
+     */
+    private AiOrderResponse finishResponse(Set<MessageKeyword> keywords, OrderIntent intent,
+                                           String aiMessage, ConversationState state) {
+        if (intent == null) {
+            // Detect intent từ response (có thể cải thiện)
+            intent = detectIntentFromResponse(aiMessage, state);
+        }
 
         // Check nếu có confirm order
-        if (isConfirmOrder(message, aiMessage)) {
+        if (isConfirmOrder(keywords)) {
             return handleConfirmOrder(state);
         }
 
@@ -166,7 +496,8 @@ public class AiOrderAgentService {
                 null,
                 null,
                 null,
-                orderItems
+                orderItems,
+                null
         );
 
         try {
@@ -218,7 +549,7 @@ public class AiOrderAgentService {
                         item.getQuantity(),
                         formatPrice(item.getSubtotal())));
             }
-            context.append("Tổng: ").append(formatPrice(conversationService.getCartTotal(state.getSessionId())))
+            context.append("Tổng: ").append(formatPrice(state.getCartTotal()))
                     .append(" VNĐ\n");
         } else {
             context.append("Giỏ hàng đang trống.\n");
@@ -229,20 +560,24 @@ public class AiOrderAgentService {
 
     /**
      * Detect intent từ response (simple heuristic)
+     * Keyword của response đã sắp theo thứ tự ưu tiên, intent đầu tiên thỏa điều kiện thắng
      */
     private OrderIntent detectIntentFromResponse(String response, ConversationState state) {
-        String lower = response.toLowerCase();
-        
-        if (lower.contains("đã thêm") || lower.contains("thêm vào giỏ")) {
+        Set<OrderIntent> found = EnumSet.noneOf(OrderIntent.class);
+        for (KeywordAutomaton.Match<OrderIntent> match : RESPONSE_KEYWORDS.findAll(response.toLowerCase())) {
+            found.add(match.value());
+        }
+
+        if (found.contains(OrderIntent.ADD_TO_CART)) {
             return OrderIntent.ADD_TO_CART;
         }
-        if (lower.contains("giỏ hàng") && state.getCartItems().isEmpty()) {
+        if (found.contains(OrderIntent.VIEW_CART) && state.isCartEmpty()) {
             return OrderIntent.VIEW_CART;
         }
-        if (lower.contains("xóa") || lower.contains("bỏ")) {
+        if (found.contains(OrderIntent.REMOVE_FROM_CART)) {
             return OrderIntent.REMOVE_FROM_CART;
         }
-        if (lower.contains("menu") || lower.contains("món")) {
+        if (found.contains(OrderIntent.ASK_MENU)) {
             return OrderIntent.ASK_MENU;
         }
         
@@ -252,13 +587,15 @@ public class AiOrderAgentService {
     /**
      * Check nếu user muốn confirm order
      */
-    private boolean isConfirmOrder(String userMessage, String aiResponse) {
-        String lower = userMessage.toLowerCase();
-        return lower.contains("đặt hàng") ||
-               lower.contains("xác nhận") ||
-               lower.contains("thanh toán") ||
-               lower.contains("checkout") ||
-               lower.contains("ok") && lower.contains("đặt");
+    private boolean isConfirmOrder(Set<MessageKeyword> keywords) {
+        return keywords.contains(MessageKeyword.CONFIRM) ||
+               keywords.contains(MessageKeyword.OK) && keywords.contains(MessageKeyword.PLACE);
+    }
+
+    /**
+     * Câu trả lời của fast path kèm intent đã biết
+     */
+    private record FastPathReply(OrderIntent intent, String message) {
     }
 
     /**
@@ -270,23 +607,14 @@ public class AiOrderAgentService {
             ConversationState state,
             boolean requiresConfirmation) {
         
-        List<CartItemDto> cartItems = state.getCartItems().stream()
-                .map(item -> new CartItemDto(
-                        item.getProduct().getId(),
-                        item.getProduct().getName(),
-                        item.getQuantity(),
-                        item.getPrice(),
-                        item.getNote()
-                ))
-                .collect(Collectors.toList());
-
-        Double totalAmount = conversationService.getCartTotal(state.getSessionId());
+        // Snapshot bất biến: cart và tổng tiền lấy cùng một thời điểm (DTO được cache trong state)
+        ConversationSnapshot snapshot = state.snapshot();
 
         return new AiOrderResponse(
                 message,
                 intent,
-                cartItems,
-                totalAmount,
+                snapshot.cartItems(),
+                snapshot.cartTotal(),
                 null,
                 requiresConfirmation
         );
@@ -320,21 +648,5 @@ public class AiOrderAgentService {
         }
         return itemName.toString().trim();
     }
-
-    /**
-     * Extract quantity from message
-     */
-    private Integer extractQuantity(String message) {
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("(\\d+)");
-        java.util.regex.Matcher matcher = pattern.matcher(message);
-        if (matcher.find()) {
-            try {
-                return Integer.parseInt(matcher.group(1));
-            } catch (NumberFormatException e) {
-                return 1;
-            }
-        }
-        return 1;
-    }
 }
 
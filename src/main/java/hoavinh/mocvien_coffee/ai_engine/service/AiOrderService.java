@@ -5,11 +5,9 @@ import hoavinh.mocvien_coffee.ai_engine.advisors.OrderIntentAdvisor;
 import hoavinh.mocvien_coffee.ai_engine.tools.OrderExtractionHelper;
 import hoavinh.mocvien_coffee.dto.AiOrderRequest;
 import hoavinh.mocvien_coffee.dto.AiOrderResponse;
-import hoavinh.mocvien_coffee.dto.CartItemDto;
 import hoavinh.mocvien_coffee.dto.OrderItemRequest;
 import hoavinh.mocvien_coffee.dto.OrderRequest;
 import hoavinh.mocvien_coffee.model.Order;
-import hoavinh.mocvien_coffee.model.Product;
 import hoavinh.mocvien_coffee.model.User;
 import hoavinh.mocvien_coffee.repository.UserRepository;
 import hoavinh.mocvien_coffee.service.OrderService;
@@ -33,6 +31,8 @@ public class AiOrderService {
     private final OrderIntentAdvisor intentAdvisor;
     private final OrderService orderService;
     private final UserRepository userRepository;
+    private final LlmRequestScheduler llmRequestScheduler;
+    private final SessionTurnGate sessionTurnGate;
 
     public AiOrderService(
             ChatClient.Builder chatClientBuilder,
@@ -41,7 +41,9 @@ public class AiOrderService {
             ConversationService conversationService,
             OrderIntentAdvisor intentAdvisor,
             OrderService orderService,
-            UserRepository userRepository) {
+            UserRepository userRepository,
+            LlmRequestScheduler llmRequestScheduler,
+            SessionTurnGate sessionTurnGate) {
         this.chatClient = chatClientBuilder
                 .defaultSystem("Bạn là nhân viên AI thân thiện của quán Mộc Miên. " +
                         "Bạn giúp khách hàng đặt món, trả lời câu hỏi về menu. " +
@@ -54,19 +56,28 @@ public class AiOrderService {
         this.intentAdvisor = intentAdvisor;
         this.orderService = orderService;
         this.userRepository = userRepository;
+        this.llmRequestScheduler = llmRequestScheduler;
+        this.sessionTurnGate = sessionTurnGate;
     }
 
     /**
-     * Xử lý message từ khách hàng
+     * Xử lý message từ khách hàng (lần lượt theo session, xem SessionTurnGate)
      */
     public AiOrderResponse processCustomerMessage(AiOrderRequest request) {
+        try (SessionTurnGate.Turn turn = sessionTurnGate.enter(request.sessionId())) {
+            return processTurn(request);
+        }
+    }
+
+    private AiOrderResponse processTurn(AiOrderRequest request) {
         String message = request.message();
         String sessionId = request.sessionId();
         String tableNumber = request.tableNumber();
 
-        // Load menu
-        List<Product> menu = menuContextService.loadMenuFromDatabase();
-        String menuContext = menuContextService.formatMenuForAiContext(menu);
+        // Menu snapshot (chỉ build lại khi product thay đổi)
+        MenuSnapshot snapshot = menuContextService.getSnapshot();
+        MenuNameIndex nameIndex = snapshot.nameIndex();
+        String menuContext = snapshot.formattedContext();
 
         // Get or create conversation
         ConversationState state = conversationService.getOrCreateConversation(sessionId);
@@ -79,7 +90,7 @@ public class AiOrderService {
         OrderIntent intent = intentAdvisor.detectIntent(message, state);
 
         // Handle intent
-        return handleIntent(intent, message, state, menu, menuContext);
+        return handleIntent(intent, message, state, nameIndex, menuContext);
     }
 
     /**
@@ -89,13 +100,13 @@ public class AiOrderService {
             OrderIntent intent,
             String message,
             ConversationState state,
-            List<Product> menu,
+            MenuNameIndex nameIndex,
             String menuContext) {
 
         return switch (intent) {
             case GREETING -> handleGreeting(state, menuContext);
             case ASK_MENU -> handleAskMenu(message, menuContext);
-            case ADD_TO_CART -> handleAddToCart(message, state, menu);
+            case ADD_TO_CART -> handleAddToCart(message, state, nameIndex);
             case VIEW_CART -> handleViewCart(state);
             case REMOVE_FROM_CART -> handleRemoveFromCart(message, state);
             case UPDATE_QUANTITY -> handleUpdateQuantity(message, state);
@@ -134,9 +145,7 @@ public class AiOrderService {
                 "question", message
         ));
 
-        String aiResponse = chatClient.prompt(prompt)
-                .call()
-                .content();
+        String aiResponse = askLlm(OrderIntent.ASK_MENU, prompt);
 
         return new AiOrderResponse(
                 aiResponse,
@@ -151,10 +160,10 @@ public class AiOrderService {
     /**
      * Xử lý thêm vào giỏ hàng
      */
-    private AiOrderResponse handleAddToCart(String message, ConversationState state, List<Product> menu) {
+    private AiOrderResponse handleAddToCart(String message, ConversationState state, MenuNameIndex nameIndex) {
         // Extract order items
         List<OrderExtractionHelper.ExtractedItem> extractedItems = 
-                OrderExtractionHelper.extractOrderItems(message, menu);
+                OrderExtractionHelper.extractOrderItems(message, nameIndex);
 
         if (extractedItems.isEmpty()) {
             // Nếu không extract được, dùng AI để hỏi lại
@@ -269,7 +278,8 @@ public class AiOrderService {
                 null, // surchargeName
                 null, // customerCash
                 null, // changeAmount
-                orderItems
+                orderItems,
+                null  // idempotencyKey
         );
 
         try {
@@ -333,9 +343,7 @@ public class AiOrderService {
                 "message", message
         ));
 
-        String aiResponse = chatClient.prompt(prompt)
-                .call()
-                .content();
+        String aiResponse = askLlm(OrderIntent.UNKNOWN, prompt);
 
         return new AiOrderResponse(
                 aiResponse,
@@ -347,6 +355,18 @@ public class AiOrderService {
         );
     }
 
+    /**
+     * Gọi LLM qua scheduler, quá tải thì trả lời xin lỗi ngay
+     */
+    private String askLlm(OrderIntent intent, Prompt prompt) {
+        try {
+            return llmRequestScheduler.call(LlmRequestScheduler.priorityFor(intent),
+                    () -> chatClient.prompt(prompt).call().content());
+        } catch (LlmOverloadedException e) {
+            return LlmOverloadedException.FRIENDLY_MESSAGE;
+        }
+    }
+
     /**
      * Validate cart items
      */
@@ -393,23 +413,14 @@ public class AiOrderService {
             ConversationState state,
             boolean requiresConfirmation) {
         
-        List<CartItemDto> cartItems = state.getCartItems().stream()
-                .map(item -> new CartItemDto(
-                        item.getProduct().getId(),
-                        item.getProduct().getName(),
-                        item.getQuantity(),
-                        item.getPrice(),
-                        item.getNote()
-                ))
-                .collect(Collectors.toList());
-
-        Double totalAmount = conversationService.getCartTotal(state.getSessionId());
+        // Snapshot bất biến: cart và tổng tiền lấy cùng một thời điểm (DTO được cache trong state)
+        ConversationSnapshot snapshot = state.snapshot();
 
         return new AiOrderResponse(
                 message,
                 intent,
-                cartItems,
-                totalAmount,
+                snapshot.cartItems(),
+                snapshot.cartTotal(),
                 null,
                 requiresConfirmation
         );
@@ -1,33 +1,117 @@
 package hoavinh.mocvien_coffee.ai_engine.service;
 
+import hoavinh.mocvien_coffee.dto.CartItemDto;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Conversation của các session chat AI (in-memory)
+ * Session hết hạn theo hashed timer wheel, thời gian đo bằng System.nanoTime():
+ * - Mỗi bucket ứng với một tick (app.ai.session.tick-seconds), session nằm trong bucket của tick hết hạn dự kiến
+ * - Truy cập session chỉ ghi lại nanoTime, không đụng tới wheel; khi tới bucket, session còn được dùng
+ *   thì xếp lại sang bucket mới, hết hạn thì xóa -> mỗi lần dọn chỉ xét các bucket tới hạn, không quét cả map
+ * - Tối đa app.ai.session.max-live session, vượt quá thì đẩy ra session lâu không dùng nhất (LRU theo tick)
+ * Lưu trữ (ConversationStore) theo kiểu write-behind:
+ * - Thay đổi chỉ đánh dấu session, định kỳ (app.ai.session.flush-interval-ms) ghi một batch xuống store
+ * - Chỉ đọc (chat không đổi cart) cũng đánh dấu, nhưng thưa (app.ai.session.activity-persist-seconds),
+ *   để lastActivity trong store không cũ tới mức restore coi session đang dùng là đã hết hạn
+ * - Session không có trong bộ nhớ (sau restart / bị đẩy ra) được đọc lại từ store ở lần truy cập đầu tiên
+ * - Khi tắt app thì ghi nốt phần còn lại
+ */
 @Service
 public class ConversationService {
 
-    // In-memory storage (có thể nâng cấp lên Redis sau)
+    // Session đang sống trong bộ nhớ
     private final Map<String, ConversationState> conversations = new ConcurrentHashMap<>();
-    private static final long SESSION_TIMEOUT_MINUTES = 30;
+    private final ConversationStore conversationStore;
+    // Session đã thay đổi / đã xóa chưa ghi xuống store
+    private final Set<String> dirtySessions = ConcurrentHashMap.newKeySet();
+    private final Set<String> deletedSessions = ConcurrentHashMap.newKeySet();
+    // Session bị đẩy ra khỏi bộ nhớ, giữ lại tới khi một lần flush bắt đầu sau lúc đẩy ra chạy xong
+    // (flush đang chạy có thể đã lấy id khỏi dirtySessions nhưng chưa kịp đọc state)
+    private final Map<String, Parked> evictedUnsaved = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+
+    private final long timeoutNanos;
+    private final long tickNanos;
+    private final long activityPersistNanos;
+    private final int maxLiveSessions;
+    private final long baseNanos = System.nanoTime();
+    private final List<Queue<WheelEntry>> wheel;
+    // Chỉ một thread dọn wheel (expire / evict) tại một thời điểm, chat không bao giờ phải chờ lock này
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    // Tick nhỏ nhất chưa dọn, chỉ đọc/ghi khi giữ maintenanceLock
+    private long nextTick;
+    private final LongAdder expiredSessions = new LongAdder();
+    private final LongAdder evictedSessions = new LongAdder();
+    private final LongAdder restoredSessions = new LongAdder();
+
+    public ConversationService(ConversationStore conversationStore,
+                               @Value("${app.ai.session.timeout-minutes:30}") long timeoutMinutes,
+                               @Value("${app.ai.session.tick-seconds:30}") long tickSeconds,
+                               @Value("${app.ai.session.max-live:2000}") int maxLiveSessions,
+                               @Value("${app.ai.session.activity-persist-seconds:60}") long activityPersistSeconds) {
+        this.conversationStore = conversationStore;
+        this.timeoutNanos = TimeUnit.MINUTES.toNanos(Math.max(1, timeoutMinutes));
+        this.tickNanos = TimeUnit.SECONDS.toNanos(Math.max(1, tickSeconds));
+        this.maxLiveSessions = Math.max(1, maxLiveSessions);
+        // Ghi activity thưa hơn nhiều so với timeout, nhưng không bao giờ thưa hơn một nửa timeout
+        this.activityPersistNanos = Math.min(TimeUnit.SECONDS.toNanos(Math.max(1, activityPersistSeconds)),
+                timeoutNanos / 2);
+
+        // Đủ bucket cho một vòng timeout, hạn mới luôn rơi vào bucket khác bucket đang dọn
+        int buckets = (int) (timeoutNanos / tickNanos) + 2;
+        this.wheel = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+    }
 
     /**
-     * Lấy hoặc tạo conversation state mới
+     * Lấy hoặc tạo conversation state mới (mỗi lần lấy tính là một lần truy cập session)
      */
     public ConversationState getOrCreateConversation(String sessionId) {
-        if (sessionId == null || sessionId.isBlank()) {
+        boolean generated = sessionId == null || sessionId.isBlank();
+        if (generated) {
             sessionId = generateSessionId();
         }
 
-        return conversations.computeIfAbsent(sessionId, k -> {
-            ConversationState state = new ConversationState(k);
-            state.setLastActivity(LocalDateTime.now());
+        ConversationState state = conversations.get(sessionId);
+        if (state != null) {
+            touch(state);
             return state;
+        }
+
+        // Đọc store ngoài computeIfAbsent để không giữ lock của map trong lúc query DB
+        ConversationState restored = generated ? null : restore(sessionId);
+        state = conversations.computeIfAbsent(sessionId, k -> {
+            ConversationState newState = restored != null ? restored : new ConversationState(k);
+            schedule(newState);
+            return newState;
         });
+        if (conversations.size() > maxLiveSessions) {
+            evictOverflow();
+        }
+        return state;
     }
 
     /**
@@ -36,27 +120,12 @@ public class ConversationService {
     public ConversationState addToCart(String sessionId, List<CartItem> items) {
         ConversationState state = getOrCreateConversation(sessionId);
         
+        // Sản phẩm đã có trong cart thì cộng dồn quantity (tra theo productId, không quét cart)
         for (CartItem newItem : items) {
-            // Kiểm tra xem sản phẩm đã có trong cart chưa
-            boolean found = false;
-            for (CartItem existingItem : state.getCartItems()) {
-                if (existingItem.getProduct().getId().equals(newItem.getProduct().getId())) {
-                    // Cập nhật quantity và note nếu có
-                    existingItem.setQuantity(existingItem.getQuantity() + newItem.getQuantity());
-                    if (newItem.getNote() != null && !newItem.getNote().isBlank()) {
-                        existingItem.setNote(newItem.getNote());
-                    }
-                    found = true;
-                    break;
-                }
-            }
-            
-            if (!found) {
-                state.getCartItems().add(newItem);
-            }
+            state.addCartItem(newItem);
         }
         
-        state.updateActivity();
+        markChanged(state);
         return state;
     }
 
@@ -66,68 +135,102 @@ public class ConversationService {
     public ConversationState removeFromCart(String sessionId, List<String> productNames) {
         ConversationState state = getOrCreateConversation(sessionId);
         
-        state.getCartItems().removeIf(item -> 
-            productNames.stream().anyMatch(name -> 
-                item.getProduct().getName().equalsIgnoreCase(name)
-            )
-        );
+        for (CartItem item : state.getCartItems()) {
+            if (productNames.stream().anyMatch(name -> item.getProduct().getName().equalsIgnoreCase(name))) {
+                state.removeCartItem(item.getProduct().getId());
+            }
+        }
         
-        state.updateActivity();
+        markChanged(state);
         return state;
     }
 
     /**
-     * Lấy cart hiện tại
+     * Cập nhật số lượng một món trong cart (quantity <= 0 thì xóa món)
+     *
+     * @return false nếu món không có trong cart
+     */
+    public boolean updateQuantity(String sessionId, Long productId, int quantity) {
+        ConversationState state = getOrCreateConversation(sessionId);
+        boolean updated = state.updateCartItemQuantity(productId, quantity);
+        markChanged(state);
+        return updated;
+    }
+
+    /**
+     * Truy cập không đổi dữ liệu: chỉ đánh dấu ghi lại lastActivity nếu lần đánh dấu trước đã quá activityPersistNanos
+     */
+    private void touch(ConversationState state) {
+        state.updateActivity();
+        long accessNanos = state.getLastAccessNanos();
+        if (accessNanos - state.getActivityMarkedNanos() >= activityPersistNanos) {
+            state.setActivityMarkedNanos(accessNanos);
+            dirtySessions.add(state.getSessionId());
+        }
+    }
+
+    private void markChanged(ConversationState state) {
+        state.updateActivity();
+        state.setActivityMarkedNanos(state.getLastAccessNanos());
+        dirtySessions.add(state.getSessionId());
+    }
+
+    /**
+     * Lấy cart hiện tại (danh sách chỉ đọc)
      */
     public List<CartItem> getCart(String sessionId) {
         ConversationState state = conversations.get(sessionId);
         if (state == null) {
-            return new ArrayList<>();
+            return List.of();
         }
-        return new ArrayList<>(state.getCartItems());
+        return state.getCartItems();
     }
 
     /**
      * Lấy cart summary dạng text
+     * Render lại chỉ khi cart thay đổi từ lần trước
      */
     public String getCartSummary(String sessionId) {
         ConversationState state = conversations.get(sessionId);
-        if (state == null || state.getCartItems().isEmpty()) {
+        if (state == null) {
+            return "Giỏ hàng của bạn đang trống.";
+        }
+        return state.getCartSummary(this::renderCartSummary);
+    }
+
+    private String renderCartSummary(ConversationSnapshot snapshot) {
+        if (snapshot.cartItems().isEmpty()) {
             return "Giỏ hàng của bạn đang trống.";
         }
 
         StringBuilder sb = new StringBuilder();
         sb.append("=== GIỎ HÀNG CỦA BẠN ===\n\n");
         
-        double total = 0;
-        for (CartItem item : state.getCartItems()) {
-            double subtotal = item.getSubtotal();
-            total += subtotal;
+        for (CartItemDto item : snapshot.cartItems()) {
+            double subtotal = item.price() * item.quantity();
             sb.append(String.format("• %s x%d - %s VNĐ", 
-                    item.getProduct().getName(), 
-                    item.getQuantity(),
+                    item.productName(), 
+                    item.quantity(),
                     formatPrice(subtotal)));
-            if (item.getNote() != null && !item.getNote().isBlank()) {
-                sb.append(" (Ghi chú: ").append(item.getNote()).append(")");
+            if (item.note() != null && !item.note().isBlank()) {
+                sb.append(" (Ghi chú: ").append(item.note()).append(")");
             }
             sb.append("\n");
         }
         
-        sb.append("\nTổng cộng: ").append(formatPrice(total)).append(" VNĐ");
+        sb.append("\nTổng cộng: ").append(formatPrice(snapshot.cartTotal())).append(" VNĐ");
         return sb.toString();
     }
 
     /**
-     * Tính tổng tiền cart
+     * Tính tổng tiền cart (tổng đã cập nhật dần trong ConversationState)
      */
     public Double getCartTotal(String sessionId) {
         ConversationState state = conversations.get(sessionId);
-        if (state == null || state.getCartItems().isEmpty()) {
+        if (state == null) {
             return 0.0;
         }
-        return state.getCartItems().stream()
-                .mapToDouble(CartItem::getSubtotal)
-                .sum();
+        return state.getCartTotal();
     }
 
     /**
@@ -135,6 +238,9 @@ public class ConversationService {
      */
     public void clearConversation(String sessionId) {
         conversations.remove(sessionId);
+        evictedUnsaved.remove(sessionId);
+        dirtySessions.remove(sessionId);
+        deletedSessions.add(sessionId);
     }
 
     /**
@@ -143,22 +249,259 @@ public class ConversationService {
     public void setTableNumber(String sessionId, String tableNumber) {
         ConversationState state = getOrCreateConversation(sessionId);
         state.setTableNumber(tableNumber);
-        state.updateActivity();
+        markChanged(state);
     }
 
     /**
-     * Cleanup expired sessions
+     * Cleanup expired sessions: chỉ xử lý các bucket của wheel đã tới hạn từ lần dọn trước
      */
+    @Scheduled(fixedDelayString = "${app.ai.session.sweep-interval-ms:10000}")
     public void cleanupExpiredSessions() {
-        LocalDateTime now = LocalDateTime.now();
-        conversations.entrySet().removeIf(entry -> {
-            ConversationState state = entry.getValue();
-            if (state.getLastActivity() == null) {
-                return true;
+        maintenanceLock.lock();
+        try {
+            long now = System.nanoTime();
+            long currentTick = tickOf(now);
+            // Trễ hơn một vòng wheel (máy sleep...) thì mỗi bucket chỉ cần dọn một lần
+            long from = Math.max(nextTick, currentTick - wheel.size() + 1);
+            for (long tick = from; tick <= currentTick; tick++) {
+                processBucket(tick, currentTick, now, false);
             }
-            long minutesSinceActivity = java.time.Duration.between(state.getLastActivity(), now).toMinutes();
-            return minutesSinceActivity > SESSION_TIMEOUT_MINUTES;
-        });
+            nextTick = Math.max(nextTick, currentTick + 1);
+            evictOverflowLocked();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Số session đang sống / đã hết hạn / bị đẩy ra do vượt giới hạn
+     */
+    public Map<String, Object> getSessionMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("live", conversations.size());
+        metrics.put("maxLive", maxLiveSessions);
+        metrics.put("expired", expiredSessions.sum());
+        metrics.put("evicted", evictedSessions.sum());
+        metrics.put("restored", restoredSessions.sum());
+        metrics.put("pendingWrites", dirtySessions.size() + deletedSessions.size());
+        return metrics;
+    }
+
+    /**
+     * Write-behind: ghi các session đã thay đổi / đã xóa xuống store trong một batch
+     * Ghi lỗi thì giữ lại để lần sau ghi tiếp
+     */
+    @Scheduled(fixedDelayString = "${app.ai.session.flush-interval-ms:2000}")
+    public void flushToStore() {
+        synchronized (flushLock) {
+            // Session đẩy ra trước lần flush này: thay đổi còn lại (nếu có) đều nằm trong dirtySessions bên dưới
+            Map<String, Parked> parked = new HashMap<>(evictedUnsaved);
+            List<String> deleted = drain(deletedSessions);
+            List<ConversationSnapshot> snapshots = new ArrayList<>();
+            for (String sessionId : drain(dirtySessions)) {
+                ConversationState state = conversations.get(sessionId);
+                if (state == null) {
+                    Parked evicted = evictedUnsaved.get(sessionId);
+                    if (evicted == null) {
+                        continue;
+                    }
+                    state = evicted.state();
+                }
+                ConversationSnapshot snapshot = state.snapshot();
+                if (snapshot.isBlank()) {
+                    deleted.add(sessionId);
+                } else {
+                    snapshots.add(snapshot);
+                }
+            }
+            if (deleted.isEmpty() && snapshots.isEmpty()) {
+                parked.forEach(evictedUnsaved::remove);
+                return;
+            }
+
+            try {
+                // Xóa trước, session tạo lại sau khi xóa (cùng id) vẫn được ghi
+                conversationStore.deleteAll(deleted);
+                conversationStore.saveAll(snapshots);
+                parked.forEach(evictedUnsaved::remove);
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Flush " + snapshots.size() + " conversations failed, will retry: " + e.getMessage());
+                deletedSessions.addAll(deleted);
+                snapshots.forEach(snapshot -> dirtySessions.add(snapshot.sessionId()));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushToStore();
+    }
+
+    /**
+     * Session không còn trong bộ nhớ: lấy lại bản bị đẩy ra chưa kịp ghi, hoặc đọc từ store
+     *
+     * @return null nếu không có / đã hết hạn / đã bị xóa
+     */
+    private ConversationState restore(String sessionId) {
+        Parked evicted = evictedUnsaved.remove(sessionId);
+        if (evicted != null) {
+            // Flush có thể vừa bỏ qua bản này, đánh dấu lại cho chắc
+            markChanged(evicted.state());
+            return evicted.state();
+        }
+        if (deletedSessions.contains(sessionId)) {
+            // Đã xóa nhưng store chưa kịp xóa
+            return null;
+        }
+
+        Optional<ConversationState> stored;
+        try {
+            stored = conversationStore.load(sessionId);
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Cannot load conversation " + sessionId + ": " + e.getMessage());
+            return null;
+        }
+        if (stored.isEmpty()) {
+            return null;
+        }
+
+        ConversationState state = stored.get();
+        LocalDateTime lastActivity = state.getLastActivity();
+        if (lastActivity == null
+                || Duration.between(lastActivity, LocalDateTime.now()).toNanos() >= timeoutNanos) {
+            deletedSessions.add(sessionId);
+            return null;
+        }
+        restoredSessions.increment();
+        // Ghi lại lastActivity mới ngay, restart tiếp theo không thấy bản cũ trong store
+        markChanged(state);
+        return state;
+    }
+
+    private static List<String> drain(Set<String> ids) {
+        List<String> drained = new ArrayList<>();
+        for (Iterator<String> iterator = ids.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * Vượt giới hạn session: thread đang tạo session tự dọn nếu chưa ai dọn, không chờ
+     */
+    private void evictOverflow() {
+        if (!maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            evictOverflowLocked();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Duyệt wheel từ tick sớm nhất: session có hạn (tính theo lần truy cập thật) sớm nhất là session
+     * lâu không dùng nhất; session được dùng lại sau khi xếp lịch thì chuyển sang bucket mới
+     * Vòng thứ hai chỉ cần khi mọi session đều vừa được dùng
+     */
+    private void evictOverflowLocked() {
+        for (int pass = 0; pass < 2 && conversations.size() > maxLiveSessions; pass++) {
+            long now = System.nanoTime();
+            // Hạn xa nhất có thể là tick hiện tại + một vòng wheel
+            long lastTick = tickOf(now) + wheel.size();
+            for (long tick = nextTick; tick <= lastTick && conversations.size() > maxLiveSessions; tick++) {
+                processBucket(tick, tick, now, true);
+            }
+        }
+    }
+
+    /**
+     * Xử lý các entry tới hạn (tick <= dueTick) trong bucket của tick, entry chưa tới hạn giữ lại
+     * Mỗi session chỉ đổi trong computeIfPresent (khóa theo key của ConcurrentHashMap)
+     *
+     * @param evict true để đẩy session ra khi đang vượt max-live
+     */
+    private void processBucket(long tick, long dueTick, long now, boolean evict) {
+        Queue<WheelEntry> bucket = bucket(tick);
+        List<WheelEntry> notDue = new ArrayList<>();
+        for (WheelEntry entry = bucket.poll(); entry != null; entry = bucket.poll()) {
+            if (entry.tick() > dueTick) {
+                notDue.add(entry);
+                continue;
+            }
+            WheelEntry due = entry;
+            conversations.computeIfPresent(due.sessionId(), (id, state) -> {
+                if (state.getScheduledTick() != due.tick()) {
+                    // Entry cũ, session đã được xếp sang tick khác
+                    return state;
+                }
+                if (now - state.getLastAccessNanos() >= timeoutNanos) {
+                    expiredSessions.increment();
+                    dirtySessions.remove(id);
+                    deletedSessions.add(id);
+                    return null;
+                }
+                if (deadlineTick(state.getLastAccessNanos()) > dueTick) {
+                    // Được dùng lại sau khi xếp lịch -> chuyển sang bucket của hạn mới
+                    schedule(state);
+                } else if (evict && conversations.size() > maxLiveSessions) {
+                    evictedSessions.increment();
+                    // Luôn giữ lại: flush đang chạy có thể đã lấy id khỏi dirtySessions mà chưa đọc state
+                    evictedUnsaved.put(id, new Parked(state));
+                    return null;
+                } else {
+                    // Đã đủ chỗ, giữ nguyên lịch cũ
+                    notDue.add(due);
+                }
+                return state;
+            });
+        }
+        bucket.addAll(notDue);
+    }
+
+    /**
+     * Xếp session vào bucket theo hạn tính từ lần truy cập cuối
+     */
+    private void schedule(ConversationState state) {
+        long tick = deadlineTick(state.getLastAccessNanos());
+        state.setScheduledTick(tick);
+        bucket(tick).offer(new WheelEntry(state.getSessionId(), tick));
+    }
+
+    /**
+     * Tick đầu tiên mà session (không được dùng thêm) chắc chắn đã hết hạn
+     */
+    private long deadlineTick(long lastAccessNanos) {
+        return tickOf(lastAccessNanos + timeoutNanos) + 1;
+    }
+
+    private long tickOf(long nanos) {
+        return (nanos - baseNanos) / tickNanos;
+    }
+
+    private Queue<WheelEntry> bucket(long tick) {
+        return wheel.get((int) Math.floorMod(tick, (long) wheel.size()));
+    }
+
+    private record WheelEntry(String sessionId, long tick) {
+    }
+
+    /**
+     * Một lần đẩy ra: so sánh theo identity, flush chỉ bỏ đúng lần đẩy ra nó đã thấy
+     * (session lấy lại rồi bị đẩy ra lần nữa trong lúc flush thì vẫn được giữ)
+     */
+    private static final class Parked {
+        private final ConversationState state;
+
+        Parked(ConversationState state) {
+            this.state = state;
+        }
+
+        ConversationState state() {
+            return state;
+        }
     }
 
     /**
@@ -0,0 +1,34 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import hoavinh.mocvien_coffee.dto.CartItemDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ảnh chụp bất biến của một ConversationState (build response, lưu xuống ConversationStore)
+ *
+ * @param sessionId    session chat
+ * @param tableNumber  số bàn (null nếu chưa có)
+ * @param lastActivity lần truy cập cuối
+ * @param cartItems    các món trong cart theo thứ tự thêm (giá là giá lúc thêm)
+ * @param cartTotal    tổng tiền cart, khớp với cartItems
+ * @param metadata     metadata của conversation
+ */
+public record ConversationSnapshot(
+        String sessionId,
+        String tableNumber,
+        LocalDateTime lastActivity,
+        List<CartItemDto> cartItems,
+        double cartTotal,
+        Map<String, Object> metadata
+) {
+
+    /**
+     * Không có gì đáng lưu (cart trống, chưa chọn bàn)
+     */
+    public boolean isBlank() {
+        return cartItems.isEmpty() && tableNumber == null && metadata.isEmpty();
+    }
+}
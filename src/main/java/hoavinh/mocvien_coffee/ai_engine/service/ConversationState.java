@@ -1,22 +1,48 @@
 package hoavinh.mocvien_coffee.ai_engine.service;
 
+import hoavinh.mocvien_coffee.dto.CartItemDto;
+
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
+/**
+ * Trạng thái hội thoại của một session
+ * Cart lưu theo productId (giữ thứ tự thêm), tổng tiền và số món cập nhật dần mỗi lần thay đổi
+ * Danh sách cart, DTO và summary dạng text được cache, chỉ build lại sau khi cart thay đổi
+ * Thread-safe: mọi thao tác trên cart đồng bộ trên chính state (lượt chat của cùng session đã được
+ * SessionTurnGate xếp hàng, lock này chỉ bảo vệ khi flush / dọn session đọc cùng lúc), snapshot() là bản bất biến
+ */
 public class ConversationState {
     private String sessionId;
-    private List<CartItem> cartItems;
-    private String tableNumber;
-    private LocalDateTime lastActivity;
-    private Map<String, Object> metadata;
+    private final Map<Long, CartItem> cart = new LinkedHashMap<>();
+    private double cartTotal;
+    private int cartQuantity;
+    private volatile String tableNumber;
+    private volatile LocalDateTime lastActivity;
+    // Thời điểm truy cập cuối theo System.nanoTime() (đơn điệu, dùng cho expiry)
+    private volatile long lastAccessNanos;
+    // lastAccessNanos lần cuối session được đánh dấu cần ghi xuống store (ConversationService quản lý)
+    private volatile long activityMarkedNanos;
+    // Tick của timer wheel mà session đang được xếp vào (ConversationService quản lý)
+    private volatile long scheduledTick = -1;
+    private volatile Map<String, Object> metadata;
+
+    // Cache, null = cần build lại
+    private List<CartItem> cartItemsView;
+    private List<CartItemDto> cartItemDtos;
+    private String cartSummary;
 
     public ConversationState() {
-        this.cartItems = new ArrayList<>();
-        this.metadata = new HashMap<>();
+        this.metadata = new ConcurrentHashMap<>();
         this.lastActivity = LocalDateTime.now();
+        this.lastAccessNanos = System.nanoTime();
+        this.activityMarkedNanos = lastAccessNanos;
     }
 
     public ConversationState(String sessionId) {
@@ -33,12 +59,141 @@ public class ConversationState {
         this.sessionId = sessionId;
     }
 
-    public List<CartItem> getCartItems() {
-        return cartItems;
+    /**
+     * Các món trong cart theo thứ tự thêm (chỉ đọc, thay đổi qua addCartItem/removeCartItem/...)
+     */
+    public synchronized List<CartItem> getCartItems() {
+        List<CartItem> view = cartItemsView;
+        if (view == null) {
+            view = List.copyOf(cart.values());
+            cartItemsView = view;
+        }
+        return view;
+    }
+
+    public synchronized void setCartItems(List<CartItem> cartItems) {
+        clearCart();
+        if (cartItems != null) {
+            cartItems.forEach(this::addCartItem);
+        }
+    }
+
+    /**
+     * Thêm món, nếu đã có product này thì cộng dồn số lượng (giữ giá lúc thêm lần đầu) và cập nhật note
+     */
+    public synchronized void addCartItem(CartItem newItem) {
+        Long productId = newItem.getProduct().getId();
+        CartItem existingItem = cart.get(productId);
+        if (existingItem == null) {
+            cart.put(productId, newItem);
+            cartTotal += newItem.getSubtotal();
+            cartQuantity += newItem.getQuantity();
+        } else {
+            existingItem.setQuantity(existingItem.getQuantity() + newItem.getQuantity());
+            if (newItem.getNote() != null && !newItem.getNote().isBlank()) {
+                existingItem.setNote(newItem.getNote());
+            }
+            cartTotal += existingItem.getPrice() * newItem.getQuantity();
+            cartQuantity += newItem.getQuantity();
+        }
+        invalidateCart();
+    }
+
+    /**
+     * Xóa món theo productId
+     *
+     * @return món đã xóa, null nếu không có trong cart
+     */
+    public synchronized CartItem removeCartItem(Long productId) {
+        CartItem removed = cart.remove(productId);
+        if (removed != null) {
+            cartTotal -= removed.getSubtotal();
+            cartQuantity -= removed.getQuantity();
+            invalidateCart();
+        }
+        return removed;
+    }
+
+    /**
+     * Đặt lại số lượng của một món (quantity <= 0 thì xóa món)
+     *
+     * @return false nếu món không có trong cart
+     */
+    public synchronized boolean updateCartItemQuantity(Long productId, int quantity) {
+        CartItem item = cart.get(productId);
+        if (item == null) {
+            return false;
+        }
+        if (quantity <= 0) {
+            removeCartItem(productId);
+            return true;
+        }
+        cartTotal += item.getPrice() * (quantity - item.getQuantity());
+        cartQuantity += quantity - item.getQuantity();
+        item.setQuantity(quantity);
+        invalidateCart();
+        return true;
+    }
+
+    public synchronized void clearCart() {
+        cart.clear();
+        cartTotal = 0;
+        cartQuantity = 0;
+        invalidateCart();
+    }
+
+    public synchronized boolean isCartEmpty() {
+        return cart.isEmpty();
+    }
+
+    /**
+     * Tổng tiền cart, O(1)
+     */
+    public synchronized double getCartTotal() {
+        // Cart rỗng thì trả về đúng 0, không để sai số cộng trừ double còn sót lại
+        return cart.isEmpty() ? 0.0 : cartTotal;
+    }
+
+    /**
+     * Tổng số lượng các món trong cart, O(1)
+     */
+    public synchronized int getCartQuantity() {
+        return cartQuantity;
     }
 
-    public void setCartItems(List<CartItem> cartItems) {
-        this.cartItems = cartItems;
+    public synchronized List<CartItemDto> getCartItemDtos() {
+        List<CartItemDto> dtos = cartItemDtos;
+        if (dtos == null) {
+            dtos = getCartItems().stream()
+                    .map(item -> new CartItemDto(
+                            item.getProduct().getId(),
+                            item.getProduct().getName(),
+                            item.getQuantity(),
+                            item.getPrice(),
+                            item.getNote()
+                    ))
+                    .toList();
+            cartItemDtos = dtos;
+        }
+        return dtos;
+    }
+
+    /**
+     * Summary dạng text của cart, chỉ gọi renderer khi cart đã thay đổi từ lần render trước
+     */
+    public synchronized String getCartSummary(Function<ConversationSnapshot, String> renderer) {
+        if (cartSummary == null) {
+            cartSummary = renderer.apply(snapshot());
+        }
+        return cartSummary;
+    }
+
+    /**
+     * Ảnh chụp bất biến của conversation (cart, số bàn, metadata)
+     */
+    public synchronized ConversationSnapshot snapshot() {
+        return new ConversationSnapshot(sessionId, tableNumber, lastActivity, getCartItemDtos(), getCartTotal(),
+                Collections.unmodifiableMap(new HashMap<>(metadata)));
     }
 
     public String getTableNumber() {
@@ -62,11 +217,46 @@ public class ConversationState {
     }
 
     public void setMetadata(Map<String, Object> metadata) {
-        this.metadata = metadata;
+        // ConcurrentHashMap không nhận null, bỏ các entry null
+        Map<String, Object> copy = new ConcurrentHashMap<>();
+        if (metadata != null) {
+            metadata.forEach((key, value) -> {
+                if (key != null && value != null) {
+                    copy.put(key, value);
+                }
+            });
+        }
+        this.metadata = copy;
+    }
+
+    public long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    long getActivityMarkedNanos() {
+        return activityMarkedNanos;
+    }
+
+    void setActivityMarkedNanos(long activityMarkedNanos) {
+        this.activityMarkedNanos = activityMarkedNanos;
+    }
+
+    long getScheduledTick() {
+        return scheduledTick;
+    }
+
+    void setScheduledTick(long scheduledTick) {
+        this.scheduledTick = scheduledTick;
     }
 
     public void updateActivity() {
         this.lastActivity = LocalDateTime.now();
+        this.lastAccessNanos = System.nanoTime();
     }
-}
 
+    private void invalidateCart() {
+        cartItemsView = null;
+        cartItemDtos = null;
+        cartSummary = null;
+    }
+}
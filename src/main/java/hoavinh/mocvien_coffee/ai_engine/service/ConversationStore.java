@@ -0,0 +1,21 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Tầng lưu trữ của conversation, ConversationService ghi xuống theo batch (write-behind)
+ * và chỉ đọc lên khi một session không còn trong bộ nhớ (sau restart / bị đẩy ra)
+ * Chọn bằng app.ai.session.store: db (mặc định, bảng ai_conversations) hoặc memory (không lưu)
+ */
+public interface ConversationStore {
+
+    /**
+     * Khôi phục conversation đã lưu, empty nếu không có
+     */
+    Optional<ConversationState> load(String sessionId);
+
+    void saveAll(Collection<ConversationSnapshot> snapshots);
+
+    void deleteAll(Collection<String> sessionIds);
+}
@@ -0,0 +1,69 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import hoavinh.mocvien_coffee.ai_engine.advisors.OrderIntent;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đếm số message được trả lời bằng fast path (rule + template, không gọi LLM) so với số lần phải hỏi LLM
+ * Xem qua GET /ai/order/metrics
+ */
+@Component
+public class FastPathMetrics {
+
+    private final Map<OrderIntent, LongAdder> fastPathHits = new EnumMap<>(OrderIntent.class);
+    private final LongAdder llmEscalations = new LongAdder();
+
+    public FastPathMetrics() {
+        // Tạo sẵn counter cho mọi intent, sau đó map chỉ đọc nên không cần đồng bộ
+        for (OrderIntent intent : OrderIntent.values()) {
+            fastPathHits.put(intent, new LongAdder());
+        }
+    }
+
+    public void recordFastPath(OrderIntent intent) {
+        fastPathHits.get(intent).increment();
+    }
+
+    public void recordLlmEscalation() {
+        llmEscalations.increment();
+    }
+
+    public long getFastPathHits() {
+        return fastPathHits.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public long getLlmEscalations() {
+        return llmEscalations.sum();
+    }
+
+    /**
+     * Tỉ lệ message không cần LLM (0 nếu chưa có message nào)
+     */
+    public double getHitRatio() {
+        long hits = getFastPathHits();
+        long total = hits + getLlmEscalations();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Long> byIntent = new LinkedHashMap<>();
+        fastPathHits.forEach((intent, counter) -> {
+            long count = counter.sum();
+            if (count > 0) {
+                byIntent.put(intent.name(), count);
+            }
+        });
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("fastPathHits", getFastPathHits());
+        result.put("llmEscalations", getLlmEscalations());
+        result.put("hitRatio", getHitRatio());
+        result.put("fastPathByIntent", byIntent);
+        return result;
+    }
+}
@@ -0,0 +1,130 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hoavinh.mocvien_coffee.dto.CartItemDto;
+import hoavinh.mocvien_coffee.model.AiConversation;
+import hoavinh.mocvien_coffee.model.Product;
+import hoavinh.mocvien_coffee.repository.AiConversationRepository;
+import hoavinh.mocvien_coffee.repository.ProductRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lưu conversation vào bảng ai_conversations (cart và metadata dạng JSON)
+ * Khi khôi phục, món đã bị xóa khỏi menu thì bỏ khỏi cart, giá giữ nguyên giá lúc khách thêm
+ */
+@Component
+@ConditionalOnProperty(name = "app.ai.session.store", havingValue = "db", matchIfMissing = true)
+public class JpaConversationStore implements ConversationStore {
+
+    private static final TypeReference<List<CartItemDto>> CART_TYPE = new TypeReference<>() {
+    };
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final AiConversationRepository conversationRepository;
+    private final ProductRepository productRepository;
+    private final ObjectMapper objectMapper;
+
+    public JpaConversationStore(AiConversationRepository conversationRepository,
+                                ProductRepository productRepository,
+                                ObjectMapper objectMapper) {
+        this.conversationRepository = conversationRepository;
+        this.productRepository = productRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<ConversationState> load(String sessionId) {
+        return conversationRepository.findById(sessionId).map(this::toState);
+    }
+
+    @Override
+    @Transactional
+    public void saveAll(Collection<ConversationSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<AiConversation> entities = new ArrayList<>(snapshots.size());
+        for (ConversationSnapshot snapshot : snapshots) {
+            entities.add(AiConversation.builder()
+                    .sessionId(snapshot.sessionId())
+                    .tableNumber(snapshot.tableNumber())
+                    .lastActivity(snapshot.lastActivity())
+                    .cartJson(toJson(snapshot.cartItems()))
+                    .metadataJson(toJson(snapshot.metadata()))
+                    .updatedAt(now)
+                    .build());
+        }
+        conversationRepository.saveAll(entities);
+    }
+
+    @Override
+    @Transactional
+    public void deleteAll(Collection<String> sessionIds) {
+        if (!sessionIds.isEmpty()) {
+            conversationRepository.deleteAllByIdInBatch(sessionIds);
+        }
+    }
+
+    private ConversationState toState(AiConversation entity) {
+        ConversationState state = new ConversationState(entity.getSessionId());
+        state.setTableNumber(entity.getTableNumber());
+        if (entity.getLastActivity() != null) {
+            state.setLastActivity(entity.getLastActivity());
+        }
+
+        List<CartItemDto> items = fromJson(entity.getCartJson(), CART_TYPE, List.of());
+        if (!items.isEmpty()) {
+            // Một query cho mọi product của cart
+            Map<Long, Product> products = productRepository.findAllById(
+                            items.stream().map(CartItemDto::productId).toList())
+                    .stream()
+                    .collect(Collectors.toMap(Product::getId, Function.identity()));
+            for (CartItemDto item : items) {
+                Product product = products.get(item.productId());
+                if (product != null) {
+                    state.addCartItem(new CartItem(product, item.quantity(), item.note(), item.price()));
+                }
+            }
+        }
+
+        state.setMetadata(new HashMap<>(fromJson(entity.getMetadataJson(), METADATA_TYPE, Map.of())));
+        return state;
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize conversation", e);
+        }
+    }
+
+    private <T> T fromJson(String json, TypeReference<T> type, T fallback) {
+        if (json == null || json.isBlank()) {
+            return fallback;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            System.err.println("⚠️ Cannot read stored conversation: " + e.getMessage());
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+/**
+ * LLM đang quá tải: hàng đợi đầy hoặc request chờ quá hạn (xem LlmRequestScheduler)
+ */
+public class LlmOverloadedException extends RuntimeException {
+
+    /**
+     * Câu trả lời gửi cho khách khi bị từ chối
+     */
+    public static final String FRIENDLY_MESSAGE =
+            "Dạ quán đang đông khách nên em trả lời hơi chậm. Anh/chị thử lại sau ít phút giúp em nhé ạ! 🙏";
+
+    public LlmOverloadedException(String reason) {
+        super(reason);
+    }
+}
@@ -0,0 +1,204 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import hoavinh.mocvien_coffee.ai_engine.advisors.OrderIntent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Điều phối mọi request tới LLM (Ollama chỉ chạy một model local)
+ * - Tối đa app.ai.llm.max-concurrent request chạy cùng lúc, phần còn lại xếp hàng
+ * - Hàng đợi giới hạn app.ai.llm.max-queue, đầy thì từ chối ngay (LlmOverloadedException)
+ * - Mỗi request chỉ được chờ tối đa app.ai.llm.queue-timeout-ms, quá hạn thì bị từ chối
+ * - Hàng đợi ưu tiên: giỏ hàng / đặt món (HIGH) > hỏi menu (NORMAL) > nói chuyện (LOW);
+ *   khi đầy, request ưu tiên cao đẩy request ưu tiên thấp nhất ra khỏi hàng đợi
+ */
+@Component
+public class LlmRequestScheduler {
+
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW
+    }
+
+    private final int maxQueue;
+    private final long queueTimeoutMillis;
+    private final Object lock = new Object();
+    private final TreeSet<Ticket> queue = new TreeSet<>(
+            Comparator.comparing(Ticket::priority).thenComparingLong(Ticket::sequence));
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private int availablePermits;
+
+    public LlmRequestScheduler(@Value("${app.ai.llm.max-concurrent:1}") int maxConcurrent,
+                               @Value("${app.ai.llm.max-queue:20}") int maxQueue,
+                               @Value("${app.ai.llm.queue-timeout-ms:20000}") long queueTimeoutMillis) {
+        this.availablePermits = Math.max(1, maxConcurrent);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    /**
+     * Mức ưu tiên theo intent của khách
+     */
+    public static Priority priorityFor(OrderIntent intent) {
+        if (intent == null) {
+            return Priority.LOW;
+        }
+        return switch (intent) {
+            case ADD_TO_CART, VIEW_CART, REMOVE_FROM_CART, UPDATE_QUANTITY, CONFIRM_ORDER, CANCEL -> Priority.HIGH;
+            case ASK_MENU -> Priority.NORMAL;
+            default -> Priority.LOW;
+        };
+    }
+
+    /**
+     * Chạy một lời gọi LLM đồng bộ (chatClient...call()) khi tới lượt
+     *
+     * @throws LlmOverloadedException nếu hàng đợi đầy hoặc chờ quá hạn
+     */
+    public <T> T call(Priority priority, Supplier<T> task) {
+        Ticket ticket = enqueue(priority);
+        try {
+            ticket.permit().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(ticket);
+            throw new LlmOverloadedException("Interrupted while waiting for LLM");
+        } catch (ExecutionException e) {
+            throw asOverloaded(e.getCause());
+        }
+
+        try {
+            return task.get();
+        } finally {
+            release(ticket);
+        }
+    }
+
+    /**
+     * Chạy một lời gọi LLM dạng stream (chatClient...stream()) khi tới lượt
+     * Permit được giữ đến khi stream kết thúc, lỗi hoặc client hủy
+     */
+    public <T> Flux<T> stream(Priority priority, Supplier<Flux<T>> task) {
+        return Flux.defer(() -> {
+            Ticket ticket = enqueue(priority);
+            return Mono.fromFuture(ticket.permit(), true)
+                    .doOnCancel(() -> abandon(ticket))
+                    .onErrorMap(this::asOverloaded)
+                    .thenMany(Flux.defer(task).doFinally(signal -> release(ticket)));
+        });
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getQueueSize() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private Ticket enqueue(Priority priority) {
+        Ticket ticket = new Ticket(priority, sequence.incrementAndGet(), new CompletableFuture<>(),
+                new AtomicBoolean(), new AtomicBoolean());
+        Ticket evicted = null;
+
+        synchronized (lock) {
+            if (availablePermits > 0 && queue.isEmpty()) {
+                availablePermits--;
+                ticket.granted().set(true);
+                ticket.permit().complete(null);
+                return ticket;
+            }
+            if (queue.size() >= maxQueue) {
+                Ticket lowest = queue.isEmpty() ? null : queue.last();
+                if (lowest == null || lowest.priority().compareTo(priority) <= 0) {
+                    throw reject("LLM queue is full (" + maxQueue + " waiting)");
+                }
+                queue.remove(lowest);
+                evicted = lowest;
+            }
+            queue.add(ticket);
+        }
+
+        if (evicted != null) {
+            evicted.permit().completeExceptionally(reject("Evicted by a higher priority request"));
+        }
+        CompletableFuture.runAsync(() -> expire(ticket),
+                CompletableFuture.delayedExecutor(queueTimeoutMillis, TimeUnit.MILLISECONDS));
+        return ticket;
+    }
+
+    private void expire(Ticket ticket) {
+        boolean removed;
+        synchronized (lock) {
+            removed = queue.remove(ticket);
+        }
+        if (removed) {
+            ticket.permit().completeExceptionally(
+                    reject("Waited more than " + queueTimeoutMillis + " ms for LLM"));
+        }
+    }
+
+    /**
+     * Request bỏ cuộc khi đang chờ (client hủy / thread bị interrupt)
+     * Nếu permit vừa được cấp thì trả lại
+     */
+    private void abandon(Ticket ticket) {
+        boolean removed;
+        synchronized (lock) {
+            removed = queue.remove(ticket);
+        }
+        if (!removed && ticket.granted().get()) {
+            release(ticket);
+        }
+    }
+
+    private void release(Ticket ticket) {
+        if (!ticket.released().compareAndSet(false, true)) {
+            return;
+        }
+        Ticket next;
+        synchronized (lock) {
+            next = queue.pollFirst();
+            if (next == null) {
+                availablePermits++;
+                return;
+            }
+            next.granted().set(true);
+        }
+        next.permit().complete(null);
+    }
+
+    private LlmOverloadedException reject(String reason) {
+        rejected.incrementAndGet();
+        System.err.println("⚠️ LLM request rejected: " + reason);
+        return new LlmOverloadedException(reason);
+    }
+
+    private LlmOverloadedException asOverloaded(Throwable error) {
+        return error instanceof LlmOverloadedException overloaded
+                ? overloaded
+                : new LlmOverloadedException(String.valueOf(error.getMessage()));
+    }
+
+    private record Ticket(Priority priority,
+                          long sequence,
+                          CompletableFuture<Void> permit,
+                          AtomicBoolean granted,
+                          AtomicBoolean released) {
+    }
+}
@@ -0,0 +1,305 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Vector index nằm trong JVM cho menu (flat index, brute-force cosine)
+ * Menu chỉ vài trăm đến vài nghìn món nên quét toàn bộ vẫn chỉ mất micro giây, không cần HNSW
+ *
+ * - Vector được L2-normalize và lưu liền nhau trong một float[] (n * dim) -> cosine = dot product,
+ *   vòng lặp đơn giản để JIT tự vectorize
+ * - Copy-on-write: ghi (add/delete) tạo snapshot mới, đọc (search) không cần lock
+ * - Cùng contract với VectorStore nên dùng thay Qdrant được khi Qdrant không chạy
+ */
+public class LocalMenuVectorIndex implements VectorStore {
+
+    private final EmbeddingModel embeddingModel;
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public LocalMenuVectorIndex(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return;
+        }
+        List<String> texts = documents.stream().map(Document::getText).toList();
+        List<float[]> embeddings = embeddingModel.embed(texts);
+
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            Map<String, Document> merged = new LinkedHashMap<>();
+            Map<String, float[]> vectors = new LinkedHashMap<>();
+            for (int i = 0; i < current.documents.size(); i++) {
+                Document document = current.documents.get(i);
+                merged.put(document.getId(), document);
+                vectors.put(document.getId(), current.vectorAt(i));
+            }
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                merged.put(document.getId(), document);
+                vectors.put(document.getId(), normalize(embeddings.get(i)));
+            }
+            snapshot = Snapshot.of(new ArrayList<>(merged.values()), new ArrayList<>(vectors.values()));
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+        Set<String> ids = new HashSet<>(idList);
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            List<Document> documents = new ArrayList<>();
+            List<float[]> vectors = new ArrayList<>();
+            for (int i = 0; i < current.documents.size(); i++) {
+                Document document = current.documents.get(i);
+                if (!ids.contains(document.getId())) {
+                    documents.add(document);
+                    vectors.add(current.vectorAt(i));
+                }
+            }
+            snapshot = Snapshot.of(documents, vectors);
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        List<String> ids = snapshot.documents.stream()
+                .filter(document -> matches(filterExpression, document.getMetadata()))
+                .map(Document::getId)
+                .toList();
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Snapshot current = snapshot;
+        int size = current.documents.size();
+        int topK = request.getTopK();
+        if (size == 0 || topK <= 0) {
+            return List.of();
+        }
+
+        float[] query = normalize(embeddingModel.embed(request.getQuery()));
+        if (query.length != current.dimensions) {
+            throw new IllegalStateException("Query embedding has " + query.length
+                    + " dimensions, index has " + current.dimensions);
+        }
+
+        Filter.Expression filter = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        double threshold = request.getSimilarityThreshold();
+
+        // Top-K bằng insertion sort trên mảng nhỏ (K thường 1-5)
+        int[] bestIndex = new int[Math.min(topK, size)];
+        float[] bestScore = new float[bestIndex.length];
+        int found = 0;
+
+        float[] vectors = current.vectors;
+        int dim = current.dimensions;
+        for (int i = 0; i < size; i++) {
+            int offset = i * dim;
+            float score = 0f;
+            for (int d = 0; d < dim; d++) {
+                score += vectors[offset + d] * query[d];
+            }
+            if (score < threshold) {
+                continue;
+            }
+            if (found == bestIndex.length && score <= bestScore[found - 1]) {
+                continue;
+            }
+            if (filter != null && !matches(filter, current.documents.get(i).getMetadata())) {
+                continue;
+            }
+            int position = found < bestIndex.length ? found++ : found - 1;
+            while (position > 0 && bestScore[position - 1] < score) {
+                bestScore[position] = bestScore[position - 1];
+                bestIndex[position] = bestIndex[position - 1];
+                position--;
+            }
+            bestScore[position] = score;
+            bestIndex[position] = i;
+        }
+
+        List<Document> results = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            Document document = current.documents.get(bestIndex[i]);
+            results.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(document.getMetadata())
+                    .score((double) bestScore[i])
+                    .build());
+        }
+        return results;
+    }
+
+    public Set<String> documentIds() {
+        Set<String> ids = new HashSet<>();
+        snapshot.documents.forEach(document -> ids.add(document.getId()));
+        return ids;
+    }
+
+    public int size() {
+        return snapshot.documents.size();
+    }
+
+    public boolean isEmpty() {
+        return snapshot.documents.isEmpty();
+    }
+
+    /**
+     * Đánh giá filter expression trên metadata, đủ các toán tử của Filter.ExpressionType như khi lọc trên Qdrant
+     * Key không có trong metadata chỉ khớp ISNULL (và NOT của biểu thức khác)
+     */
+    private boolean matches(Filter.Operand operand, Map<String, Object> metadata) {
+        if (operand instanceof Filter.Group group) {
+            return matches(group.content(), metadata);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new UnsupportedOperationException("Unsupported filter operand: " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> matches(expression.left(), metadata) && matches(expression.right(), metadata);
+            case OR -> matches(expression.left(), metadata) || matches(expression.right(), metadata);
+            case NOT -> !matches(expression.left(), metadata);
+            case EQ -> valueEquals(metadata, expression);
+            case NE -> !valueEquals(metadata, expression);
+            case IN -> valueIn(metadata, expression);
+            case NIN -> !valueIn(metadata, expression);
+            case GT -> compares(metadata, expression, order -> order > 0);
+            case GTE -> compares(metadata, expression, order -> order >= 0);
+            case LT -> compares(metadata, expression, order -> order < 0);
+            case LTE -> compares(metadata, expression, order -> order <= 0);
+            case ISNULL -> metadata.get(((Filter.Key) expression.left()).key()) == null;
+            case ISNOTNULL -> metadata.get(((Filter.Key) expression.left()).key()) != null;
+        };
+    }
+
+    /**
+     * So sánh giá trị metadata với giá trị trong filter: theo số nếu cả hai là số (price lưu Double,
+     * filter có thể là Integer hoặc chuỗi số), ngược lại theo chuỗi
+     * Key không có trong metadata (hoặc NaN) thì mọi phép so sánh đều sai
+     */
+    private boolean compares(Map<String, Object> metadata, Filter.Expression expression, IntPredicate accept) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        Object expected = ((Filter.Value) expression.right()).value();
+        if (actual == null || expected == null) {
+            return false;
+        }
+        Double actualNumber = toNumber(actual);
+        Double expectedNumber = toNumber(expected);
+        if (actualNumber != null && expectedNumber != null) {
+            if (actualNumber.isNaN() || expectedNumber.isNaN()) {
+                return false;
+            }
+            return accept.test(Double.compare(actualNumber, expectedNumber));
+        }
+        return accept.test(String.valueOf(actual).compareTo(String.valueOf(expected)));
+    }
+
+    private static Double toNumber(Object value) {
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Double.valueOf(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private boolean valueEquals(Map<String, Object> metadata, Filter.Expression expression) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        Object expected = ((Filter.Value) expression.right()).value();
+        return actual != null && Objects.equals(String.valueOf(actual), String.valueOf(expected));
+    }
+
+    private boolean valueIn(Map<String, Object> metadata, Filter.Expression expression) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        Object expected = ((Filter.Value) expression.right()).value();
+        if (actual == null || !(expected instanceof Collection<?> values)) {
+            return false;
+        }
+        String actualText = String.valueOf(actual);
+        return values.stream().anyMatch(value -> actualText.equals(String.valueOf(value)));
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float inverse = (float) (1.0 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    /**
+     * Trạng thái bất biến của index (documents[i] tương ứng vectors[i * dimensions ...])
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(List.of(), new float[0], 0);
+
+        final List<Document> documents;
+        final float[] vectors;
+        final int dimensions;
+
+        private Snapshot(List<Document> documents, float[] vectors, int dimensions) {
+            this.documents = documents;
+            this.vectors = vectors;
+            this.dimensions = dimensions;
+        }
+
+        static Snapshot of(List<Document> documents, List<float[]> vectors) {
+            if (documents.isEmpty()) {
+                return EMPTY;
+            }
+            int dimensions = vectors.get(0).length;
+            float[] flat = new float[documents.size() * dimensions];
+            for (int i = 0; i < vectors.size(); i++) {
+                float[] vector = vectors.get(i);
+                if (vector.length != dimensions) {
+                    throw new IllegalArgumentException("All embeddings must have " + dimensions + " dimensions");
+                }
+                System.arraycopy(vector, 0, flat, i * dimensions, dimensions);
+            }
+            return new Snapshot(List.copyOf(documents), flat, dimensions);
+        }
+
+        float[] vectorAt(int index) {
+            float[] vector = new float[dimensions];
+            System.arraycopy(vectors, index * dimensions, vector, 0, dimensions);
+            return vector;
+        }
+    }
+}
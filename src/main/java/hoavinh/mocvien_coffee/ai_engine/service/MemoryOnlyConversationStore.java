@@ -0,0 +1,28 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Không lưu gì, conversation chỉ sống trong bộ nhớ (mất khi restart)
+ */
+@Component
+@ConditionalOnProperty(name = "app.ai.session.store", havingValue = "memory")
+public class MemoryOnlyConversationStore implements ConversationStore {
+
+    @Override
+    public Optional<ConversationState> load(String sessionId) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void saveAll(Collection<ConversationSnapshot> snapshots) {
+    }
+
+    @Override
+    public void deleteAll(Collection<String> sessionIds) {
+    }
+}
@@ -1,19 +1,72 @@
 package hoavinh.mocvien_coffee.ai_engine.service;
 
+import hoavinh.mocvien_coffee.ai_engine.text.VietnameseNormalizer;
 import hoavinh.mocvien_coffee.model.Product;
 import hoavinh.mocvien_coffee.repository.ProductRepository;
+import hoavinh.mocvien_coffee.service.MenuVersionService;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 public class MenuContextService {
 
     private final ProductRepository productRepository;
+    private final MenuVersionService menuVersionService;
+    private volatile MenuSnapshot snapshot;
 
-    public MenuContextService(ProductRepository productRepository) {
+    public MenuContextService(ProductRepository productRepository,
+                              MenuVersionService menuVersionService) {
         this.productRepository = productRepository;
+        this.menuVersionService = menuVersionService;
+    }
+
+    /**
+     * Lấy snapshot menu hiện tại
+     * Chỉ query DB + format lại khi menu version thay đổi (ProductService save/delete)
+     */
+    public MenuSnapshot getSnapshot() {
+        long version = menuVersionService.currentVersion();
+        MenuSnapshot current = snapshot;
+        if (current != null && current.version() == version) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.version() != version) {
+                current = buildSnapshot(version);
+                snapshot = current;
+                System.out.println("📋 Menu snapshot rebuilt (version " + version + ", "
+                        + current.products().size() + " products)");
+            }
+            return current;
+        }
+    }
+
+    private MenuSnapshot buildSnapshot(long version) {
+        List<Product> products = List.copyOf(loadMenuFromDatabase());
+
+        Map<String, List<Product>> byCategory = new LinkedHashMap<>();
+        Map<String, Product> byNormalizedName = new LinkedHashMap<>();
+        for (Product product : products) {
+            byCategory.computeIfAbsent(product.getCategory().toLowerCase(), k -> new ArrayList<>()).add(product);
+            byNormalizedName.putIfAbsent(VietnameseNormalizer.fold(product.getName()), product);
+        }
+        byCategory.replaceAll((category, items) -> List.copyOf(items));
+
+        return new MenuSnapshot(
+                version,
+                products,
+                formatMenuForAiContext(products),
+                Collections.unmodifiableMap(byCategory),
+                Collections.unmodifiableMap(byNormalizedName),
+                MenuNameIndex.of(products)
+        );
     }
 
     /**
@@ -59,7 +112,7 @@ public class MenuContextService {
      * Lấy menu theo category
      */
     public List<Product> getMenuByCategory(String category) {
-        return productRepository.findByCategoryIgnoreCaseAndAvailableTrueOrderByNameAsc(category);
+        return getSnapshot().productsInCategory(category);
     }
 
     /**
@@ -0,0 +1,173 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import hoavinh.mocvien_coffee.ai_engine.text.VietnameseNormalizer;
+import hoavinh.mocvien_coffee.model.Product;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index tên món cho fuzzy matching, build một lần theo menu version (nằm trong MenuSnapshot)
+ * - Tên đã normalize sẵn: folded (bỏ dấu, lowercase, giữ khoảng trắng) và compact (bỏ luôn khoảng trắng)
+ * - Posting list theo bigram ký tự của tên compact -> lấy ứng viên mà không quét cả menu
+ * - Token (từ của tên folded) -> products
+ *
+ * Ứng viên luôn bao trọn kết quả thật (chỉ cần kiểm tra lại trên tập nhỏ):
+ * - tên chứa query / query chứa tên (độ dài >= 2): hai chuỗi có chung ít nhất một bigram
+ * - similarity > 0.7: theo bổ đề q-gram, hai chuỗi cách nhau d phép sửa có chung ít nhất
+ *   max(len) - 1 - 2d bigram, với d < 0.3 * max(len) thì giá trị này >= 1 khi max(len) >= 2
+ * - tên compact ngắn hơn 2 ký tự không có bigram nên luôn nằm trong tập ứng viên
+ */
+public final class MenuNameIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final List<Product> products;
+    private final String[] foldedNames;
+    private final String[] compactNames;
+    private final Map<String, int[]> bigramPostings;
+    private final Map<String, int[]> tokenPostings;
+    private final BitSet shortNames;
+
+    private MenuNameIndex(List<Product> products, String[] foldedNames, String[] compactNames,
+                          Map<String, int[]> bigramPostings, Map<String, int[]> tokenPostings, BitSet shortNames) {
+        this.products = products;
+        this.foldedNames = foldedNames;
+        this.compactNames = compactNames;
+        this.bigramPostings = bigramPostings;
+        this.tokenPostings = tokenPostings;
+        this.shortNames = shortNames;
+    }
+
+    /**
+     * Build index cho danh sách products (giữ nguyên thứ tự của danh sách)
+     * Chỉ MenuContextService gọi khi dựng snapshot, nơi khác dùng MenuSnapshot.nameIndex() thay vì build lại
+     */
+    public static MenuNameIndex of(List<Product> products) {
+        List<Product> items = List.copyOf(products);
+        String[] foldedNames = new String[items.size()];
+        String[] compactNames = new String[items.size()];
+        Map<String, List<Integer>> bigrams = new HashMap<>();
+        Map<String, List<Integer>> tokens = new HashMap<>();
+        BitSet shortNames = new BitSet(items.size());
+
+        for (int i = 0; i < items.size(); i++) {
+            String name = items.get(i).getName();
+            foldedNames[i] = VietnameseNormalizer.fold(name);
+            compactNames[i] = VietnameseNormalizer.foldCompact(name);
+
+            String compact = compactNames[i];
+            if (compact.length() < 2) {
+                shortNames.set(i);
+            }
+            for (int j = 0; j + 1 < compact.length(); j++) {
+                addPosting(bigrams, compact.substring(j, j + 2), i);
+            }
+            for (String token : foldedNames[i].split("\\s+")) {
+                if (!token.isEmpty()) {
+                    addPosting(tokens, token, i);
+                }
+            }
+        }
+
+        return new MenuNameIndex(items, foldedNames, compactNames,
+                freeze(bigrams), freeze(tokens), shortNames);
+    }
+
+    public List<Product> products() {
+        return products;
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    public Product product(int index) {
+        return products.get(index);
+    }
+
+    public String foldedName(int index) {
+        return foldedNames[index];
+    }
+
+    public String compactName(int index) {
+        return compactNames[index];
+    }
+
+    /**
+     * Ứng viên có thể khớp query theo bất kỳ cách nào (chứa, bị chứa, gần giống)
+     * = hợp các posting list của bigram trong query + các tên quá ngắn
+     *
+     * @param compactQuery query đã foldCompact
+     */
+    public BitSet candidates(String compactQuery) {
+        if (compactQuery.length() < 2) {
+            return all();
+        }
+        BitSet result = (BitSet) shortNames.clone();
+        for (int j = 0; j + 1 < compactQuery.length(); j++) {
+            for (int index : bigramPostings.getOrDefault(compactQuery.substring(j, j + 2), EMPTY)) {
+                result.set(index);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Ứng viên có tên compact chứa query = giao các posting list (bắt đầu từ list ngắn nhất)
+     *
+     * @param compactQuery query đã foldCompact
+     */
+    public BitSet candidatesContaining(String compactQuery) {
+        if (compactQuery.length() < 2) {
+            return all();
+        }
+        int[] rarest = null;
+        for (int j = 0; j + 1 < compactQuery.length(); j++) {
+            int[] postings = bigramPostings.getOrDefault(compactQuery.substring(j, j + 2), EMPTY);
+            if (rarest == null || postings.length < rarest.length) {
+                rarest = postings;
+            }
+        }
+        BitSet result = new BitSet(products.size());
+        for (int index : rarest) {
+            result.set(index);
+        }
+        return result;
+    }
+
+    /**
+     * Products có tên chứa nguyên từ (token đã fold)
+     */
+    public List<Product> productsWithToken(String foldedToken) {
+        int[] postings = tokenPostings.getOrDefault(foldedToken, EMPTY);
+        List<Product> result = new ArrayList<>(postings.length);
+        for (int index : postings) {
+            result.add(products.get(index));
+        }
+        return result;
+    }
+
+    private BitSet all() {
+        BitSet result = new BitSet(products.size());
+        result.set(0, products.size());
+        return result;
+    }
+
+    private static void addPosting(Map<String, List<Integer>> postings, String key, int index) {
+        List<Integer> list = postings.computeIfAbsent(key, k -> new ArrayList<>());
+        // Tên có thể lặp bigram/token, chỉ ghi một lần (index tăng dần nên chỉ cần so phần tử cuối)
+        if (list.isEmpty() || list.get(list.size() - 1) != index) {
+            list.add(index);
+        }
+    }
+
+    private static Map<String, int[]> freeze(Map<String, List<Integer>> postings) {
+        Map<String, int[]> frozen = new HashMap<>(postings.size() * 2);
+        postings.forEach((key, list) -> frozen.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+        return frozen;
+    }
+}
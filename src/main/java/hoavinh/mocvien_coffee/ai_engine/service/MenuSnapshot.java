@@ -0,0 +1,34 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import hoavinh.mocvien_coffee.model.Product;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ảnh chụp bất biến của menu tại một menu version
+ * Được MenuContextService build lại chỉ khi product thay đổi, hot path của chat chỉ đọc
+ *
+ * @param version                  menu version lúc build (MenuVersionService)
+ * @param products                 các product available, sắp xếp theo tên
+ * @param formattedContext         menu đã format sẵn cho prompt của AI
+ * @param productsByCategory       category (lowercase) -> products
+ * @param productsByNormalizedName tên đã normalize (không dấu, lowercase) -> product
+ * @param nameIndex                index tên món cho fuzzy matching (ProductMatchingService, OrderExtractionHelper)
+ */
+public record MenuSnapshot(
+        long version,
+        List<Product> products,
+        String formattedContext,
+        Map<String, List<Product>> productsByCategory,
+        Map<String, Product> productsByNormalizedName,
+        MenuNameIndex nameIndex
+) {
+
+    public List<Product> productsInCategory(String category) {
+        if (category == null) {
+            return List.of();
+        }
+        return productsByCategory.getOrDefault(category.toLowerCase(), List.of());
+    }
+}
@@ -1,38 +1,44 @@
 package hoavinh.mocvien_coffee.ai_engine.service;
 
+import hoavinh.mocvien_coffee.ai_engine.text.EditDistance;
+import hoavinh.mocvien_coffee.ai_engine.text.VietnameseNormalizer;
 import hoavinh.mocvien_coffee.model.Product;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class ProductMatchingService {
 
     /**
-     * Tìm sản phẩm theo tên (fuzzy matching)
+     * Tìm sản phẩm theo tên (fuzzy matching) qua name index dựng sẵn của menu (MenuSnapshot.nameIndex)
+     * Chỉ tính similarity cho các ứng viên có chung bigram với query, kết quả giữ thứ tự menu
      */
-    public List<Product> findProductsByName(String productName, List<Product> menu) {
+    public List<Product> findProductsByName(String productName, MenuNameIndex menu) {
         if (productName == null || productName.isBlank() || menu == null) {
             return new ArrayList<>();
         }
 
         String normalizedQuery = normalize(productName);
-        return menu.stream()
-                .filter(product -> {
-                    String normalizedName = normalize(product.getName());
-                    return normalizedName.contains(normalizedQuery) ||
-                           normalizedQuery.contains(normalizedName) ||
-                           calculateSimilarity(normalizedName, normalizedQuery) > 0.7;
-                })
-                .collect(Collectors.toList());
+        BitSet candidates = menu.candidates(normalizedQuery);
+        List<Product> result = new ArrayList<>();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            String normalizedName = menu.compactName(i);
+            if (normalizedName.contains(normalizedQuery) ||
+                normalizedQuery.contains(normalizedName) ||
+                isSimilar(normalizedName, normalizedQuery, 0.7)) {
+                result.add(menu.product(i));
+            }
+        }
+        return result;
     }
 
     /**
      * Tìm sản phẩm tốt nhất từ câu nói tự nhiên
      */
-    public Product matchProductFromNaturalLanguage(String text, List<Product> menu) {
+    public Product matchProductFromNaturalLanguage(String text, MenuNameIndex menu) {
         List<Product> matches = findProductsByName(text, menu);
         if (matches.isEmpty()) {
             return null;
@@ -42,76 +48,41 @@ public class ProductMatchingService {
     }
 
     /**
-     * Gợi ý sản phẩm tương tự (partial name matching)
+     * Gợi ý sản phẩm tương tự (partial name matching) qua name index của menu snapshot
+     * Chỉ kiểm tra tên nằm trong posting list hiếm nhất của query
      */
-    public List<Product> suggestSimilarProducts(String partialName, List<Product> menu) {
+    public List<Product> suggestSimilarProducts(String partialName, MenuNameIndex menu) {
         if (partialName == null || partialName.isBlank() || menu == null) {
             return new ArrayList<>();
         }
 
         String normalizedQuery = normalize(partialName);
-        return menu.stream()
-                .filter(product -> {
-                    String normalizedName = normalize(product.getName());
-                    return normalizedName.contains(normalizedQuery);
-                })
-                .limit(5) // Giới hạn 5 gợi ý
-                .collect(Collectors.toList());
+        BitSet candidates = menu.candidatesContaining(normalizedQuery);
+        List<Product> result = new ArrayList<>();
+        // Giới hạn 5 gợi ý
+        for (int i = candidates.nextSetBit(0); i >= 0 && result.size() < 5; i = candidates.nextSetBit(i + 1)) {
+            if (menu.compactName(i).contains(normalizedQuery)) {
+                result.add(menu.product(i));
+            }
+        }
+        return result;
     }
 
     /**
      * Normalize string để so sánh (lowercase, remove accents, remove spaces)
      */
     private String normalize(String text) {
-        if (text == null) return "";
-        return text.toLowerCase()
-                .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
-                .replaceAll("[èéẹẻẽêềếệểễ]", "e")
-                .replaceAll("[ìíịỉĩ]", "i")
-                .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
-                .replaceAll("[ùúụủũưừứựửữ]", "u")
-                .replaceAll("[ỳýỵỷỹ]", "y")
-                .replaceAll("[đ]", "d")
-                .replaceAll("\\s+", "")
-                .trim();
-    }
-
-    /**
-     * Tính similarity đơn giản (Levenshtein-like)
-     */
-    private double calculateSimilarity(String s1, String s2) {
-        if (s1 == null || s2 == null) return 0.0;
-        if (s1.equals(s2)) return 1.0;
-
-        int maxLen = Math.max(s1.length(), s2.length());
-        if (maxLen == 0) return 1.0;
-
-        int distance = levenshteinDistance(s1, s2);
-        return 1.0 - ((double) distance / maxLen);
+        return VietnameseNormalizer.foldCompact(text);
     }
 
     /**
-     * Tính Levenshtein distance
+     * Similarity (1 - Levenshtein / độ dài lớn hơn) có vượt ngưỡng không
+     * Dùng edit distance có ngưỡng: dừng ngay khi không thể đạt, không cấp phát ma trận
      */
-    private int levenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-
-        for (int i = 0; i <= s1.length(); i++) {
-            for (int j = 0; j <= s2.length(); j++) {
-                if (i == 0) {
-                    dp[i][j] = j;
-                } else if (j == 0) {
-                    dp[i][j] = i;
-                } else {
-                    dp[i][j] = Math.min(
-                            Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1),
-                            dp[i - 1][j - 1] + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1)
-                    );
-                }
-            }
-        }
-
-        return dp[s1.length()][s2.length()];
+    private boolean isSimilar(String s1, String s2, double threshold) {
+        if (s1 == null || s2 == null) return false;
+        if (s1.equals(s2)) return true;
+        return EditDistance.isSimilar(s1, s2, threshold);
     }
 }
 
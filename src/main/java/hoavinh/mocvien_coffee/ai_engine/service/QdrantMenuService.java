@@ -1,14 +1,30 @@
 package hoavinh.mocvien_coffee.ai_engine.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import hoavinh.mocvien_coffee.ai_engine.embedding.EmbeddingBatchPipeline;
 import hoavinh.mocvien_coffee.model.Product;
 import hoavinh.mocvien_coffee.repository.ProductRepository;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Service
@@ -16,68 +32,257 @@ public class QdrantMenuService {
 
     private final VectorStore vectorStore;
     private final ProductRepository productRepository;
-    private final String collectionName;
-    private final String qdrantHost;
-    private final int qdrantPort;
+    private final QdrantRestClient qdrantRestClient;
+    private final EmbeddingBatchPipeline embeddingBatchPipeline;
+    // Re-sync chạy trên thread khác (callback của HttpClient), không đi qua proxy @Transactional
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean productIdIndexCreated = new AtomicBoolean(false);
+    // productId -> content hash của document đã upsert vào Qdrant
+    private final Map<Long, String> syncedHashes = new ConcurrentHashMap<>();
+    private volatile boolean syncedHashesLoaded = false;
+    // Index vector trong JVM: fallback khi Qdrant lỗi, hoặc thay hẳn Qdrant khi mode=local
+    private final LocalMenuVectorIndex localIndex;
+    // productId -> content hash của document đang nằm trong local index (theo dõi riêng với Qdrant)
+    private final Map<Long, String> localHashes = new ConcurrentHashMap<>();
+    private final boolean localOnly;
 
     public QdrantMenuService(VectorStore vectorStore, 
                             ProductRepository productRepository,
-                            @Value("${spring.ai.vectorstore.qdrant.collection-name:mocvien_menu}") String collectionName,
-                            @Value("${spring.ai.vectorstore.qdrant.host:localhost}") String qdrantHost,
-                            @Value("${spring.ai.vectorstore.qdrant.port:6334}") int qdrantPort) {
+                            QdrantRestClient qdrantRestClient,
+                            EmbeddingBatchPipeline embeddingBatchPipeline,
+                            EmbeddingModel embeddingModel,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${app.ai.vector-store.mode:qdrant}") String vectorStoreMode) {
         this.vectorStore = vectorStore;
         this.productRepository = productRepository;
-        this.collectionName = collectionName;
-        this.qdrantHost = qdrantHost;
-        // REST API dùng port 6333, gRPC dùng port 6334
         // Spring AI QdrantVectorStore dùng gRPC (port 6334) cho add/search operations
-        // REST API delete operations dùng port 6333 (HTTP)
-        this.qdrantPort = 6333; // Dùng port 6333 cho REST API delete operations
-        System.out.println("🔧 QdrantMenuService initialized: " + qdrantHost + ":" + qdrantPort + "/" + collectionName);
-        System.out.println("🔧 Note: Spring AI uses gRPC (port 6334), REST API delete uses port 6333");
+        // REST API delete operations đi qua QdrantRestClient (port 6333, HTTP)
+        this.qdrantRestClient = qdrantRestClient;
+        this.embeddingBatchPipeline = embeddingBatchPipeline;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.localIndex = new LocalMenuVectorIndex(embeddingModel);
+        this.localOnly = "local".equalsIgnoreCase(vectorStoreMode);
+        System.out.println("🔧 Vector store mode: " + (localOnly ? "local (in-JVM index only)" : "qdrant (local index fallback)"));
     }
 
     /**
-     * Sync toàn bộ menu từ DB vào Qdrant
+     * Nạp local index khi app khởi động (chạy nền, embedding đã cache thì gần như tức thì)
      */
-    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpLocalIndex() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                rebuildLocalIndex(productRepository.findAllAvailable());
+            } catch (Exception e) {
+                System.err.println("⚠️ Could not warm up local vector index: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Sync toàn bộ menu từ DB vào Qdrant (incremental)
+     * Chỉ embed + upsert product có content hash thay đổi, chỉ xóa point của product không còn available
+     * (Qdrant và local index mỗi bên so với hash của chính nó)
+     * readOnly: chỉ đọc menu, với SQLite không giữ connection ghi trong lúc embed / gọi Qdrant
+     */
+    @Transactional(readOnly = true)
     public void syncAllMenuToQdrant() {
         List<Product> products = productRepository.findAllAvailable();
-        syncProductsToQdrant(products);
+        syncLocalIndexIncrementally(products);
+        if (localOnly) {
+            return;
+        }
+        syncMenuIncrementally(products);
+    }
+
+    /**
+     * Đưa local index về đúng menu hiện tại: upsert tất cả, xóa document không còn trong menu
+     * Chỉ dùng lúc khởi động (warmUpLocalIndex), các lần sync sau đi qua syncLocalIndexIncrementally
+     */
+    private synchronized void rebuildLocalIndex(List<Product> products) {
+        localHashes.clear();
+        EmbeddingBatchPipeline.BatchResult result = addToLocalIndex(products);
+
+        java.util.Set<String> currentIds = products.stream()
+                .map(product -> generateUuidFromProductId(product.getId()))
+                .collect(Collectors.toSet());
+        List<String> staleIds = localIndex.documentIds().stream()
+                .filter(id -> !currentIds.contains(id))
+                .toList();
+        localIndex.delete(staleIds);
+
+        System.out.printf("🧠 Local vector index: %d documents (%d failed)%n",
+                localIndex.size(), result.failed().size());
+    }
+
+    /**
+     * Cùng cách diff content hash như syncMenuIncrementally nhưng so với nội dung đang nằm trong local index:
+     * chỉ embed product thay đổi, chỉ xóa product không còn trong menu
+     */
+    private synchronized void syncLocalIndexIncrementally(List<Product> products) {
+        Map<Long, Product> current = new LinkedHashMap<>();
+        for (Product product : products) {
+            current.put(product.getId(), product);
+        }
+
+        List<Product> changed = current.values().stream()
+                .filter(product -> !contentHash(product).equals(localHashes.get(product.getId())))
+                .collect(Collectors.toList());
+        List<Long> removed = localHashes.keySet().stream()
+                .filter(productId -> !current.containsKey(productId))
+                .collect(Collectors.toList());
+
+        EmbeddingBatchPipeline.BatchResult result = addToLocalIndex(changed);
+        localIndex.delete(removed.stream().map(this::findPointUuidByProductId).toList());
+        removed.forEach(localHashes::remove);
+
+        System.out.printf("🧠 Local vector index: %d documents, %d changed (%d failed), %d removed%n",
+                localIndex.size(), changed.size(), result.failed().size(), removed.size());
+    }
+
+    /**
+     * Embed + thêm vào local index, ghi nhận content hash của các document thành công
+     */
+    private EmbeddingBatchPipeline.BatchResult addToLocalIndex(List<Product> products) {
+        Map<String, Product> productByDocumentId = new LinkedHashMap<>();
+        List<Document> documents = new java.util.ArrayList<>(products.size());
+        for (Product product : products) {
+            Document document = productToDocument(product);
+            productByDocumentId.put(document.getId(), product);
+            documents.add(document);
+        }
+        EmbeddingBatchPipeline.BatchResult result = embeddingBatchPipeline.run(documents, localIndex::add);
+        for (Document document : result.succeeded()) {
+            Product product = productByDocumentId.get(document.getId());
+            localHashes.put(product.getId(), contentHash(product));
+        }
+        return result;
+    }
+
+    /**
+     * So sánh content hash của menu hiện tại với những gì đã sync vào Qdrant
+     */
+    private synchronized void syncMenuIncrementally(List<Product> products) {
+        loadSyncedHashesIfNeeded();
+
+        Map<Long, Product> current = new LinkedHashMap<>();
+        for (Product product : products) {
+            current.put(product.getId(), product);
+        }
+
+        List<Product> changed = current.values().stream()
+                .filter(product -> !contentHash(product).equals(syncedHashes.get(product.getId())))
+                .collect(Collectors.toList());
+
+        List<Long> removed = syncedHashes.keySet().stream()
+                .filter(productId -> !current.containsKey(productId))
+                .collect(Collectors.toList());
+
+        System.out.printf("🔄 Incremental sync: %d products, %d changed, %d removed%n",
+                current.size(), changed.size(), removed.size());
+
+        syncProductsToQdrant(changed);
+        if (!removed.isEmpty()) {
+            try {
+                deleteProducts(removed).join();
+            } catch (Exception e) {
+                // Giữ hash để lần sync sau thử xóa lại
+                System.err.println("⚠️ Could not delete removed products " + removed + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lần sync đầu tiên sau khi khởi động: đọc contentHash đã lưu trong payload của Qdrant
+     * Point cũ chưa có contentHash sẽ được coi là đã thay đổi (re-embed một lần)
+     */
+    private void loadSyncedHashesIfNeeded() {
+        if (syncedHashesLoaded) {
+            return;
+        }
+        try {
+            Map<String, JsonNode> payloads = qdrantRestClient
+                    .scrollPayloads(List.of("productId", "contentHash"))
+                    .join();
+            syncedHashes.clear();
+            payloads.values().forEach(payload -> {
+                String productIdStr = payload.path("productId").asText(null);
+                if (productIdStr == null) {
+                    return;
+                }
+                try {
+                    syncedHashes.put(Long.parseLong(productIdStr), payload.path("contentHash").asText(""));
+                } catch (NumberFormatException ignored) {
+                    // Point không phải của menu
+                }
+            });
+            syncedHashesLoaded = true;
+            System.out.println("🔍 Loaded " + syncedHashes.size() + " content hashes from Qdrant");
+        } catch (Exception e) {
+            // Không đọc được trạng thái hiện tại -> upsert toàn bộ như trước
+            System.err.println("⚠️ Could not load content hashes from Qdrant: " + e.getMessage());
+        }
     }
 
     /**
      * Sync một hoặc nhiều products vào Qdrant
+     * Embed theo batch qua EmbeddingBatchPipeline (giới hạn batch song song, retry batch lỗi)
      */
     public void syncProductsToQdrant(List<Product> products) {
         if (products == null || products.isEmpty()) {
             return;
         }
 
-        try {
-            List<Document> documents = products.stream()
-                    .map(this::productToDocument)
-                    .collect(Collectors.toList());
+        Map<String, Product> productByDocumentId = new LinkedHashMap<>();
+        List<Document> documents = new java.util.ArrayList<>(products.size());
+        for (Product product : products) {
+            Document document = productToDocument(product);
+            productByDocumentId.put(document.getId(), product);
+            documents.add(document);
+        }
 
-            vectorStore.add(documents);
-            System.out.println("✅ Successfully synced " + documents.size() + " products to Qdrant");
-        } catch (Exception e) {
-            System.err.println("❌ Error syncing products to Qdrant: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to sync products to Qdrant", e);
+        EmbeddingBatchPipeline.BatchResult result = embeddingBatchPipeline.run(documents, vectorStore::add);
+        for (Document document : result.succeeded()) {
+            Product product = productByDocumentId.get(document.getId());
+            syncedHashes.put(product.getId(), contentHash(product));
+        }
+
+        if (result.hasFailures()) {
+            System.err.println("❌ Error syncing products to Qdrant: " + result.failed().size() + "/"
+                    + documents.size() + " documents failed after retries");
+            throw new RuntimeException("Failed to sync " + result.failed().size() + " products to Qdrant");
         }
+        System.out.println("✅ Successfully synced " + documents.size() + " products to Qdrant");
     }
 
     /**
-     * Sync một product vào Qdrant
+     * Sync một product vào Qdrant (bỏ qua nếu nội dung không đổi so với lần sync trước)
      */
     public void syncProductToQdrant(Product product) {
         if (product == null) {
             return;
         }
+        String hash = contentHash(product);
+        if (!hash.equals(localHashes.get(product.getId()))) {
+            try {
+                localIndex.add(List.of(productToDocument(product)));
+                localHashes.put(product.getId(), hash);
+            } catch (Exception e) {
+                System.err.println("⚠️ Error indexing product " + product.getId() + " locally: " + e.getMessage());
+            }
+        }
+        if (localOnly) {
+            return;
+        }
+        if (hash.equals(syncedHashes.get(product.getId()))) {
+            System.out.println("⏭️ Product " + product.getId() + " unchanged, skip re-embedding");
+            return;
+        }
         try {
             Document document = productToDocument(product);
             vectorStore.add(List.of(document));
+            syncedHashes.put(product.getId(), hash);
             System.out.println("✅ Successfully synced product " + product.getId() + " (" + product.getName() + ") to Qdrant");
         } catch (Exception e) {
             System.err.println("❌ Error syncing product " + product.getId() + " to Qdrant: " + e.getMessage());
@@ -88,229 +293,146 @@ public class QdrantMenuService {
     }
 
     /**
-     * Xóa product khỏi Qdrant bằng cách delete document có metadata.productId = productId
-     * Cách 1: Tìm point bằng search, lấy UUID, rồi xóa bằng UUID
-     * Cách 2: Xóa bằng filter (REST API)
+     * Xóa product khỏi Qdrant bằng point UUID (deterministic từ productId)
+     * Không block caller - request REST chạy async trên HttpClient dùng chung
      */
-    public void removeProductFromQdrant(Long productId) {
+    public CompletableFuture<Void> removeProductFromQdrant(Long productId) {
         if (productId == null) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
+        return removeProductsFromQdrant(List.of(productId));
+    }
 
-        try {
-            // Cách 1: Tìm point bằng search để lấy UUID thực tế
-            String pointUuid = findPointUuidByProductId(productId);
-            if (pointUuid != null) {
-                deletePointByUuid(pointUuid);
-                System.out.println("✅ Successfully deleted product " + productId + " (UUID: " + pointUuid + ")");
-                return;
-            }
-            
-            // Cách 2: Fallback - xóa bằng filter (REST API)
-            System.out.println("⚠️ Could not find UUID, trying filter method...");
-            deleteProductViaRestApi(productId);
-        } catch (Exception e) {
-            System.err.println("❌ Error deleting product from Qdrant: " + e.getMessage());
-            e.printStackTrace();
-            // Fallback: re-sync (loại bỏ product đã xóa) - chỉ khi tất cả methods fail
-            System.out.println("🔄 Falling back to re-sync all menu...");
-            syncAllMenuToQdrant();
+    /**
+     * Xóa nhiều product khỏi Qdrant trong một request
+     * Cách 1: Xóa trực tiếp bằng UUID - không cần embedding, không cần scan
+     * Cách 2: Xóa bằng filter trên payload productId (đã đánh index keyword)
+     * Cách 3: Re-sync toàn bộ menu - chỉ khi tất cả methods fail, chạy sau khi transaction của caller kết thúc
+     */
+    public CompletableFuture<Void> removeProductsFromQdrant(Collection<Long> productIds) {
+        List<Long> ids = productIds == null ? List.of() : productIds.stream()
+                .filter(java.util.Objects::nonNull)
+                .distinct()
+                .toList();
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        localIndex.delete(ids.stream().map(this::findPointUuidByProductId).toList());
+        ids.forEach(localHashes::remove);
+        if (localOnly) {
+            return CompletableFuture.completedFuture(null);
         }
+
+        // Lấy trạng thái transaction trên thread caller, callback của HttpClient không thấy transaction này
+        CompletableFuture<Void> callerCompleted = afterCallerTransaction();
+        return deleteProducts(ids)
+                .exceptionallyCompose(e -> {
+                    System.err.println("❌ Error deleting products from Qdrant: " + e.getMessage());
+                    System.out.println("🔄 Falling back to re-sync all menu...");
+                    return callerCompleted.thenRunAsync(this::resyncInNewTransaction);
+                });
     }
 
     /**
-     * Tìm UUID của point bằng cách search với filter productId
+     * Hoàn thành khi transaction của caller kết thúc (commit hoặc rollback), ngay lập tức nếu không có transaction
+     * Re-sync đọc menu sau thời điểm này nên không thấy dữ liệu chưa commit; rollback thì re-sync khôi phục point đã xóa
      */
-    private String findPointUuidByProductId(Long productId) {
-        try {
-            // Note: Spring AI SearchRequest không hỗ trợ filter trực tiếp
-            // Cần search tất cả rồi filter trong code
-            // Dùng query "product" để lấy documents (không thể dùng empty query)
-            List<Document> allDocs = vectorStore.similaritySearch(
-                    org.springframework.ai.vectorstore.SearchRequest.builder()
-                            .query("product") // Query bất kỳ để lấy documents
-                            .topK(1000) // Lấy nhiều để tìm
-                            .build()
-            );
-            
-            // Tìm document có productId trùng
-            for (Document doc : allDocs) {
-                var metadata = doc.getMetadata();
-                if (metadata != null) {
-                    String productIdStr = (String) metadata.get("productId");
-                    if (productIdStr != null && productIdStr.equals(productId.toString())) {
-                        String docId = doc.getId();
-                        System.out.println("🔍 Found point UUID: " + docId + " for productId: " + productId);
-                        return docId;
-                    }
-                }
+    private CompletableFuture<Void> afterCallerTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                completed.complete(null);
             }
-            
-            System.out.println("⚠️ Could not find point with productId: " + productId);
-            return null;
-        } catch (Exception e) {
-            System.err.println("Error finding point UUID: " + e.getMessage());
-            return null;
+        });
+        return completed;
+    }
+
+    private void resyncInNewTransaction() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> syncAllMenuToQdrant());
+        } catch (Exception syncError) {
+            System.err.println("❌ Re-sync also failed: " + syncError.getMessage());
         }
     }
 
     /**
-     * Xóa point bằng UUID
+     * Xóa bằng UUID, fallback xóa bằng filter (không re-sync)
      */
-    private void deletePointByUuid(String pointUuid) throws java.io.IOException, InterruptedException {
-        int[] portsToTry = {6333, 6334};
-        
-        for (int port : portsToTry) {
-            try {
-                String url = String.format("http://%s:%d/collections/%s/points/delete", 
-                        qdrantHost, port, collectionName);
-                
-                String pointIdJson = String.format("{\"points\":[\"%s\"]}", pointUuid);
-                
-                System.out.println("🗑️ Deleting point UUID: " + pointUuid + " on port " + port);
-                
-                java.net.http.HttpClient client = java.net.http.HttpClient.newBuilder()
-                        .connectTimeout(java.time.Duration.ofSeconds(5))
-                        .build();
-                
-                java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
-                        .uri(java.net.URI.create(url))
-                        .header("Content-Type", "application/json")
-                        .POST(java.net.http.HttpRequest.BodyPublishers.ofString(pointIdJson))
-                        .timeout(java.time.Duration.ofSeconds(10))
-                        .build();
-                
-                java.net.http.HttpResponse<String> response = client.send(request, 
-                        java.net.http.HttpResponse.BodyHandlers.ofString());
-                
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    System.out.println("✅ Successfully deleted point " + pointUuid + " (port " + port + ")");
-                    Thread.sleep(500);
-                    return;
-                }
-            } catch (Exception e) {
-                if (port == portsToTry[portsToTry.length - 1]) {
-                    throw e;
-                }
-                continue;
-            }
-        }
-        
-        throw new RuntimeException("Failed to delete point by UUID on all ports");
+    private CompletableFuture<Void> deleteProducts(List<Long> ids) {
+        List<String> pointUuids = ids.stream()
+                .map(this::findPointUuidByProductId)
+                .toList();
+
+        return qdrantRestClient.deletePoints(pointUuids)
+                .thenRun(() -> System.out.println("✅ Successfully deleted products " + ids + " from Qdrant"))
+                .thenRun(() -> ids.forEach(syncedHashes::remove))
+                .exceptionallyCompose(e -> {
+                    System.err.println("⚠️ Delete by UUID failed: " + e.getMessage() + ", trying filter method...");
+                    return deleteProductsViaFilter(ids);
+                });
     }
 
     /**
-     * Xóa product từ Qdrant bằng REST API
-     * Sử dụng filter để xóa bằng productId trong payload (reliable hơn UUID)
-     * Qdrant REST API: POST /collections/{collection_name}/points/delete
-     * Body: { "filter": { "must": [{ "key": "productId", "match": { "value": "9" } }] } }
-     * 
-     * Reference: https://qdrant.tech/documentation/concepts/points/#delete-points
+     * Lấy UUID của point từ productId
+     * Point được upsert với ID = generateUuidFromProductId(productId) (xem productToDocument),
+     * nên có thể tính trực tiếp thay vì similarity search toàn bộ collection
      */
-    private void deleteProductViaRestApi(Long productId) throws java.io.IOException, InterruptedException {
-        // Ưu tiên dùng filter vì productId có trong payload, reliable hơn UUID
-        deleteProductViaFilter(productId);
+    private String findPointUuidByProductId(Long productId) {
+        return generateUuidFromProductId(productId);
     }
 
     /**
      * Xóa bằng filter - tìm point có productId trong payload
-     * Qdrant REST API: POST /collections/{collection_name}/points/delete
-     * Body: { "filter": { "must": [{ "key": "productId", "match": { "value": "9" } }] } }
+     * Body: { "filter": { "must": [{ "key": "productId", "match": { "any": ["9", "10"] } }] } }
      */
-    private void deleteProductViaFilter(Long productId) throws java.io.IOException, InterruptedException {
-        // Qdrant REST API thường ở port 6333 (HTTP) hoặc 6334 (gRPC)
-        // Thử port 6333 trước (HTTP REST API)
-        int[] portsToTry = {6333, 6334};
-        
-        for (int port : portsToTry) {
-            try {
-                String url = String.format("http://%s:%d/collections/%s/points/delete", 
-                        qdrantHost, port, collectionName);
-                
-                // Build filter để tìm document có productId trong payload
-                String filterJson = String.format(
-                    "{\"filter\":{\"must\":[{\"key\":\"productId\",\"match\":{\"value\":\"%s\"}}]}}",
-                    productId.toString()
-                );
-                
-                System.out.println("🔍 Attempting to delete product " + productId + " from Qdrant");
-                System.out.println("🔍 Filter JSON: " + filterJson);
-                System.out.println("🔍 URL: " + url);
-                
-                java.net.http.HttpClient client = java.net.http.HttpClient.newBuilder()
-                        .connectTimeout(java.time.Duration.ofSeconds(5))
-                        .build();
-                
-                java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
-                        .uri(java.net.URI.create(url))
-                        .header("Content-Type", "application/json")
-                        .POST(java.net.http.HttpRequest.BodyPublishers.ofString(filterJson))
-                        .timeout(java.time.Duration.ofSeconds(10))
-                        .build();
-                
-                java.net.http.HttpResponse<String> response = client.send(request, 
-                        java.net.http.HttpResponse.BodyHandlers.ofString());
-                
-                System.out.println("📡 Qdrant delete response status: " + response.statusCode());
-                System.out.println("📡 Qdrant delete response body: " + response.body());
-                
-                if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                    String responseBody = response.body();
-                    if (responseBody != null && (responseBody.contains("\"status\":\"ok\"") || 
-                                                  responseBody.contains("\"status\":\"acknowledged\""))) {
-                        System.out.println("✅ Successfully deleted product " + productId + " from Qdrant (port " + port + ")");
-                        Thread.sleep(500); // Wait for async operation
-                        return; // Success, exit
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("⚠️ Failed to delete on port " + port + ": " + e.getMessage());
-                if (port == portsToTry[portsToTry.length - 1]) {
-                    // Last port, throw exception
-                    throw e;
-                }
-                // Try next port
-                continue;
-            }
+    private CompletableFuture<Void> deleteProductsViaFilter(List<Long> productIds) {
+        List<String> values = productIds.stream().map(String::valueOf).toList();
+        // Đảm bảo productId đã được index để filter không phải scan toàn bộ payload
+        return ensureProductIdPayloadIndex()
+                .thenCompose(ignored -> qdrantRestClient.deleteByPayloadValues("productId", values))
+                .thenRun(() -> productIds.forEach(syncedHashes::remove))
+                .thenRun(() -> System.out.println("✅ Successfully deleted products " + productIds + " via filter"));
+    }
+
+    /**
+     * Tạo payload index kiểu keyword cho field productId (chỉ chạy 1 lần)
+     * Lỗi tạo index không chặn việc delete, lần sau sẽ thử lại
+     */
+    private CompletableFuture<Void> ensureProductIdPayloadIndex() {
+        if (!productIdIndexCreated.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
         }
-        
-        throw new RuntimeException("Failed to delete product from Qdrant on all ports");
+        return qdrantRestClient.createKeywordIndex("productId")
+                .thenRun(() -> System.out.println("✅ Payload index 'productId' (keyword) is ready"))
+                .exceptionally(e -> {
+                    System.err.println("⚠️ Could not create payload index: " + e.getMessage());
+                    productIdIndexCreated.set(false);
+                    return null;
+                });
     }
 
     /**
-     * Alternative filter format - thử cách khác (nếu method chính fail)
-     * Note: Method này được gọi từ deleteProductViaFilter nếu cần
+     * Similarity search trên menu
+     * mode=local: chỉ dùng local index
+     * mode=qdrant: dùng Qdrant, nếu Qdrant lỗi thì fallback sang local index
      */
-    @SuppressWarnings("unused")
-    private void deleteProductViaFilterAlternative(Long productId) throws java.io.IOException, InterruptedException {
-        String url = String.format("http://%s:%d/collections/%s/points/delete", 
-                qdrantHost, qdrantPort, collectionName);
-        
-        // Thử format khác: dùng any array
-        String filterJson = String.format(
-            "{\"filter\":{\"must\":[{\"key\":\"productId\",\"match\":{\"any\":[\"%s\"]}}]}}",
-            productId.toString()
-        );
-        
-        System.out.println("🔄 Alternative filter: " + filterJson);
-        
-        java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
-        java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
-                .uri(java.net.URI.create(url))
-                .header("Content-Type", "application/json")
-                .POST(java.net.http.HttpRequest.BodyPublishers.ofString(filterJson))
-                .timeout(java.time.Duration.ofSeconds(10))
-                .build();
-        
-        java.net.http.HttpResponse<String> response = client.send(request, 
-                java.net.http.HttpResponse.BodyHandlers.ofString());
-        
-        if (response.statusCode() >= 200 && response.statusCode() < 300) {
-            System.out.println("✅ Successfully deleted product " + productId + " (alternative method)");
-        } else {
-            System.err.println("❌ Alternative delete also failed. Status: " + response.statusCode());
-            System.err.println("Response: " + response.body());
-            throw new RuntimeException("Qdrant delete failed with all methods. Check logs above for details.");
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (localOnly) {
+            return localIndex.similaritySearch(request);
+        }
+        try {
+            return vectorStore.similaritySearch(request);
+        } catch (Exception e) {
+            if (localIndex.isEmpty()) {
+                throw e;
+            }
+            System.err.println("⚠️ Qdrant search failed (" + e.getMessage() + "), falling back to local vector index");
+            return localIndex.similaritySearch(request);
         }
     }
 
@@ -318,12 +440,12 @@ public class QdrantMenuService {
      * Tìm kiếm products trong Qdrant bằng semantic search
      */
     public List<Product> searchProductsInQdrant(String query, int topK) {
-        var searchRequest = org.springframework.ai.vectorstore.SearchRequest.builder()
+        var searchRequest = SearchRequest.builder()
                 .query(query)
                 .topK(topK)
                 .build();
 
-        List<Document> documents = vectorStore.similaritySearch(searchRequest);
+        List<Document> documents = similaritySearch(searchRequest);
         
         return documents.stream()
                 .map(this::documentToProduct)
@@ -338,16 +460,7 @@ public class QdrantMenuService {
      */
     private Document productToDocument(Product product) {
         // Format content cho AI hiểu
-        String content = String.format(
-                "Tên món: %s\n" +
-                "Giá: %s VNĐ\n" +
-                "Danh mục: %s\n" +
-                "Trạng thái: %s",
-                product.getName(),
-                formatPrice(product.getPrice()),
-                product.getCategory(),
-                product.isAvailable() ? "Còn hàng" : "Hết hàng"
-        );
+        String content = buildContent(product);
 
         // Metadata để có thể query và filter
         var metadata = new java.util.HashMap<String, Object>();
@@ -356,6 +469,7 @@ public class QdrantMenuService {
         metadata.put("category", product.getCategory());
         metadata.put("price", product.getPrice());
         metadata.put("available", product.isAvailable());
+        metadata.put("contentHash", contentHash(product));
 
         // Generate UUID từ productId (deterministic)
         // Cách này đảm bảo cùng productId luôn có cùng UUID, cho phép upsert
@@ -367,6 +481,35 @@ public class QdrantMenuService {
         return doc;
     }
 
+    /**
+     * Nội dung được embed: tên, giá, danh mục, trạng thái
+     */
+    private String buildContent(Product product) {
+        return String.format(
+                "Tên món: %s\n" +
+                "Giá: %s VNĐ\n" +
+                "Danh mục: %s\n" +
+                "Trạng thái: %s",
+                product.getName(),
+                formatPrice(product.getPrice()),
+                product.getCategory(),
+                product.isAvailable() ? "Còn hàng" : "Hết hàng"
+        );
+    }
+
+    /**
+     * Content hash (SHA-256) của nội dung embed - đổi hash nghĩa là cần re-embed
+     */
+    private String contentHash(Product product) {
+        try {
+            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(buildContent(product).getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            return java.util.HexFormat.of().formatHex(hash);
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     /**
      * Generate UUID từ productId (deterministic)
      * Cùng productId sẽ luôn có cùng UUID, cho phép upsert
@@ -423,28 +566,21 @@ public class QdrantMenuService {
     /**
      * Clear và re-sync toàn bộ menu (dùng khi cần reset)
      */
-    @Transactional
+    @Transactional(readOnly = true)
     public void clearAndResyncMenu() {
+        if (localOnly) {
+            syncAllMenuToQdrant();
+            return;
+        }
         // Clear collection bằng REST API
         try {
-            String url = String.format("http://%s:%d/collections/%s/points/delete", 
-                    qdrantHost, qdrantPort, collectionName);
-            
-            // Delete all points
-            String filterJson = "{\"filter\":{\"must\":[]}}";
-            
-            java.net.http.HttpClient client = java.net.http.HttpClient.newHttpClient();
-            java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder()
-                    .uri(java.net.URI.create(url))
-                    .header("Content-Type", "application/json")
-                    .POST(java.net.http.HttpRequest.BodyPublishers.ofString(filterJson))
-                    .build();
-            
-            client.send(request, java.net.http.HttpResponse.BodyHandlers.ofString());
+            qdrantRestClient.deleteAllPoints().join();
+            syncedHashes.clear();
+            syncedHashesLoaded = true;
         } catch (Exception e) {
             System.err.println("Error clearing Qdrant collection: " + e.getMessage());
         }
-        
+
         // Re-sync
         syncAllMenuToQdrant();
     }
@@ -0,0 +1,192 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Client REST dùng chung cho các thao tác Qdrant mà Spring AI VectorStore không hỗ trợ (delete, index...)
+ * Một HttpClient duy nhất (keep-alive, HTTP/2 nếu server hỗ trợ) thay vì tạo mới mỗi request
+ * Tất cả method đều non-blocking (sendAsync), caller tự quyết định có chờ kết quả hay không
+ *
+ * Reference: https://qdrant.tech/documentation/concepts/points/#delete-points
+ */
+@Component
+public class QdrantRestClient {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final int SCROLL_PAGE_SIZE = 256;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final String collectionUrl;
+    private final String apiKey;
+
+    public QdrantRestClient(@Value("${spring.ai.vectorstore.qdrant.host:localhost}") String qdrantHost,
+                            @Value("${app.qdrant.rest-port:6333}") int restPort,
+                            @Value("${spring.ai.vectorstore.qdrant.collection-name:mocvien_menu}") String collectionName,
+                            @Value("${spring.ai.vectorstore.qdrant.api-key:}") String apiKey,
+                            ObjectMapper objectMapper) {
+        // REST API dùng port 6333 (HTTP), gRPC (6334) chỉ dành cho Spring AI QdrantVectorStore
+        this.collectionUrl = String.format("http://%s:%d/collections/%s", qdrantHost, restPort, collectionName);
+        this.apiKey = apiKey;
+        this.objectMapper = objectMapper;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        System.out.println("🔧 QdrantRestClient initialized: " + collectionUrl);
+    }
+
+    /**
+     * Xóa nhiều point bằng UUID trong một request
+     * Body: { "points": ["uuid-1", "uuid-2"] }
+     */
+    public CompletableFuture<Void> deletePoints(Collection<String> pointIds) {
+        if (pointIds == null || pointIds.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String body = pointIds.stream()
+                .map(id -> "\"" + id + "\"")
+                .collect(Collectors.joining(",", "{\"points\":[", "]}"));
+        return post("/points/delete?wait=true", body);
+    }
+
+    /**
+     * Xóa các point có payload[key] thuộc danh sách values trong một request
+     * Body: { "filter": { "must": [{ "key": "productId", "match": { "any": ["9", "10"] } }] } }
+     */
+    public CompletableFuture<Void> deleteByPayloadValues(String key, Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String anyJson = values.stream()
+                .map(value -> "\"" + value + "\"")
+                .collect(Collectors.joining(","));
+        String body = String.format("{\"filter\":{\"must\":[{\"key\":\"%s\",\"match\":{\"any\":[%s]}}]}}",
+                key, anyJson);
+        return post("/points/delete?wait=true", body);
+    }
+
+    /**
+     * Xóa toàn bộ point trong collection (giữ nguyên schema/quantization)
+     */
+    public CompletableFuture<Void> deleteAllPoints() {
+        return post("/points/delete?wait=true", "{\"filter\":{\"must\":[]}}");
+    }
+
+    /**
+     * Đọc payload của toàn bộ point (không lấy vector), phân trang bằng scroll API
+     * POST /collections/{collection_name}/points/scroll
+     * Body: { "limit": 256, "with_payload": ["productId"], "with_vector": false, "offset": ... }
+     *
+     * @return map pointId -> payload (chỉ gồm các field yêu cầu)
+     */
+    public CompletableFuture<Map<String, JsonNode>> scrollPayloads(List<String> fields) {
+        return scrollPage(fields, null, new LinkedHashMap<>());
+    }
+
+    private CompletableFuture<Map<String, JsonNode>> scrollPage(List<String> fields,
+                                                               JsonNode offset,
+                                                               Map<String, JsonNode> collected) {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.put("limit", SCROLL_PAGE_SIZE);
+        body.put("with_vector", false);
+        ArrayNode withPayload = body.putArray("with_payload");
+        fields.forEach(withPayload::add);
+        if (offset != null && !offset.isNull()) {
+            body.set("offset", offset);
+        }
+
+        HttpRequest request = requestBuilder("/points/scroll")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenCompose(response -> {
+                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        throw new QdrantRestException(String.format("Qdrant scroll failed. Status: %d, body: %s",
+                                response.statusCode(), response.body()));
+                    }
+                    JsonNode result;
+                    try {
+                        result = objectMapper.readTree(response.body()).path("result");
+                    } catch (Exception e) {
+                        throw new QdrantRestException("Invalid Qdrant scroll response: " + e.getMessage());
+                    }
+                    for (JsonNode point : result.path("points")) {
+                        collected.put(point.path("id").asText(), point.path("payload"));
+                    }
+                    JsonNode next = result.path("next_page_offset");
+                    if (next.isMissingNode() || next.isNull()) {
+                        return CompletableFuture.completedFuture(collected);
+                    }
+                    return scrollPage(fields, next, collected);
+                });
+    }
+
+    /**
+     * Tạo payload index kiểu keyword
+     * PUT /collections/{collection_name}/index
+     * Body: { "field_name": "productId", "field_schema": "keyword" }
+     */
+    public CompletableFuture<Void> createKeywordIndex(String fieldName) {
+        String body = String.format("{\"field_name\":\"%s\",\"field_schema\":\"keyword\"}", fieldName);
+        HttpRequest request = requestBuilder("/index?wait=true")
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return send(request);
+    }
+
+    private CompletableFuture<Void> post(String path, String body) {
+        HttpRequest request = requestBuilder(path)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return send(request);
+    }
+
+    private HttpRequest.Builder requestBuilder(String path) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(collectionUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(REQUEST_TIMEOUT);
+        if (apiKey != null && !apiKey.isBlank()) {
+            builder.header("api-key", apiKey);
+        }
+        return builder;
+    }
+
+    private CompletableFuture<Void> send(HttpRequest request) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenAccept(response -> {
+                    if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                        throw new QdrantRestException(String.format("Qdrant %s %s failed. Status: %d, body: %s",
+                                request.method(), request.uri().getPath(), response.statusCode(), response.body()));
+                    }
+                });
+    }
+
+    /**
+     * Lỗi khi Qdrant REST API trả về status khác 2xx
+     */
+    public static class QdrantRestException extends RuntimeException {
+        public QdrantRestException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import hoavinh.mocvien_coffee.service.MenuVersionService;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache câu trả lời của /ai/ask theo độ tương đồng embedding của câu hỏi
+ * - Hit khi cosine(câu hỏi mới, câu hỏi đã cache) >= app.ai.answer-cache.similarity-threshold
+ * - Mỗi entry gắn menu version, product thay đổi là toàn bộ cache hết hiệu lực
+ * - Lưu nguyên các chunk đã stream để replay lại như một Flux
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final MenuVersionService menuVersionService;
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // LRU theo thứ tự truy cập, key = câu hỏi gốc đã trim + lowercase
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long entriesMenuVersion = -1;
+
+    public SemanticAnswerCache(EmbeddingModel embeddingModel,
+                               MenuVersionService menuVersionService,
+                               @Value("${app.ai.answer-cache.enabled:true}") boolean enabled,
+                               @Value("${app.ai.answer-cache.similarity-threshold:0.95}") double similarityThreshold,
+                               @Value("${app.ai.answer-cache.max-entries:500}") int maxEntries,
+                               @Value("${app.ai.answer-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.embeddingModel = embeddingModel;
+        this.menuVersionService = menuVersionService;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+    }
+
+    /**
+     * Embed câu hỏi (qua embedding cache) và chụp menu version hiện tại
+     */
+    public CacheKey keyFor(String question) {
+        if (!enabled) {
+            return null;
+        }
+        float[] vector = normalize(embeddingModel.embed(question));
+        return new CacheKey(question.trim().toLowerCase(Locale.ROOT), vector, menuVersionService.currentVersion());
+    }
+
+    /**
+     * Tìm câu trả lời của câu hỏi gần nhất (cùng menu version, chưa hết TTL)
+     * Key chụp trước khi menu đổi thì coi như miss, không đụng tới cache (không kéo version về bản cũ)
+     */
+    public Optional<List<String>> lookup(CacheKey key) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        long now = System.nanoTime();
+        synchronized (entries) {
+            long currentVersion = menuVersionService.currentVersion();
+            if (key.menuVersion() != currentVersion) {
+                return Optional.empty();
+            }
+            invalidateIfMenuChanged(currentVersion);
+
+            Entry exact = entries.get(key.question());
+            if (exact != null && now - exact.createdAtNanos() < ttlNanos) {
+                return Optional.of(exact.chunks());
+            }
+
+            Entry best = null;
+            double bestScore = similarityThreshold;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (now - entry.createdAtNanos() >= ttlNanos) {
+                    iterator.remove();
+                    continue;
+                }
+                double score = dot(entry.vector(), key.vector());
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = entry;
+                }
+            }
+            return best == null ? Optional.empty() : Optional.of(best.chunks());
+        }
+    }
+
+    /**
+     * Lưu câu trả lời đã stream xong
+     * Bỏ qua nếu menu đã đổi trong lúc đang generate (câu trả lời có thể dựa trên menu cũ)
+     */
+    public void put(CacheKey key, List<String> chunks) {
+        if (key == null || chunks.isEmpty()) {
+            return;
+        }
+        synchronized (entries) {
+            invalidateIfMenuChanged(menuVersionService.currentVersion());
+            if (key.menuVersion() != entriesMenuVersion) {
+                return;
+            }
+            entries.put(key.question(), new Entry(key.vector(), List.copyOf(chunks), System.nanoTime()));
+            if (entries.size() > maxEntries) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private void invalidateIfMenuChanged(long menuVersion) {
+        if (menuVersion != entriesMenuVersion) {
+            entries.clear();
+            entriesMenuVersion = menuVersion;
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float inverse = (float) (1.0 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    public record CacheKey(String question, float[] vector, long menuVersion) {
+    }
+
+    private record Entry(float[] vector, List<String> chunks, long createdAtNanos) {
+    }
+}
@@ -0,0 +1,98 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Xếp hàng các lượt chat của cùng một session (hai request gửi liên tiếp không sửa cart cùng lúc)
+ * - Mỗi session một semaphore công bằng (FIFO): lượt của cùng session chạy đúng thứ tự gửi,
+ *   session khác nhau không bao giờ chờ nhau
+ * - Gate chỉ tồn tại khi session có lượt đang chạy / đang chờ, lượt cuối cùng rời đi thì xóa khỏi map
+ * - Dùng Semaphore thay vì ReentrantLock vì lượt streaming được release trên thread khác thread acquire
+ * - Chờ quá app.ai.session.turn-timeout-ms thì bỏ lượt (IllegalStateException)
+ */
+@Component
+public class SessionTurnGate {
+
+    private static final Turn NO_OP = () -> {
+    };
+
+    private final ConcurrentMap<String, Gate> gates = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+
+    public SessionTurnGate(@Value("${app.ai.session.turn-timeout-ms:30000}") long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Chờ tới lượt của session, dùng với try-with-resources (hoặc Flux.using cho streaming)
+     * Session chưa có id thì không cần xếp hàng
+     */
+    public Turn enter(String sessionId) {
+        if (sessionId == null || sessionId.isBlank()) {
+            return NO_OP;
+        }
+        // Đăng ký trước khi chờ để gate không bị xóa khi lượt đang giữ rời đi
+        Gate gate = gates.compute(sessionId, (id, existing) -> {
+            Gate result = existing != null ? existing : new Gate();
+            result.users++;
+            return result;
+        });
+        boolean acquired = false;
+        try {
+            acquired = gate.permit.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leave(sessionId, gate);
+            throw new IllegalStateException("Interrupted while waiting for session " + sessionId, e);
+        }
+        if (!acquired) {
+            leave(sessionId, gate);
+            throw new IllegalStateException("Session " + sessionId + " is busy with a previous message");
+        }
+        return new SessionTurn(sessionId, gate);
+    }
+
+    private void leave(String sessionId, Gate gate) {
+        gates.computeIfPresent(sessionId, (id, existing) -> existing == gate && --existing.users == 0 ? null : existing);
+    }
+
+    /**
+     * Một lượt đang giữ session, close() nhả cho lượt tiếp theo (gọi nhiều lần cũng chỉ nhả một lần)
+     */
+    public interface Turn extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Gate {
+        private final Semaphore permit = new Semaphore(1, true);
+        // Số lượt đang giữ + đang chờ, chỉ đọc / sửa trong compute của map
+        private int users;
+    }
+
+    private final class SessionTurn implements Turn {
+        private final String sessionId;
+        private final Gate gate;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        SessionTurn(String sessionId, Gate gate) {
+            this.sessionId = sessionId;
+            this.gate = gate;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                gate.permit.release();
+                leave(sessionId, gate);
+            }
+        }
+    }
+}
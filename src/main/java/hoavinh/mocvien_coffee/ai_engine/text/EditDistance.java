@@ -0,0 +1,218 @@
+package hoavinh.mocvien_coffee.ai_engine.text;
+
+/**
+ * Levenshtein distance có ngưỡng cho fuzzy matching tên món
+ * - Chuỗi ngắn (<= 64 ký tự): bit-parallel Myers/Hyyrö, mỗi ký tự của chuỗi dài chỉ tốn vài phép bit
+ * - Chuỗi dài hơn: DP hai hàng, chỉ tính dải |i - j| <= maxDistance (Ukkonen)
+ * - Cả hai dừng sớm ngay khi chắc chắn vượt maxDistance
+ * - Buffer (hàng DP, bảng bitmask) dùng lại theo thread, không cấp phát mỗi lần so sánh
+ */
+public final class EditDistance {
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private EditDistance() {
+    }
+
+    /**
+     * Khoảng cách đầy đủ (không ngưỡng)
+     */
+    public static int distance(CharSequence a, CharSequence b) {
+        return boundedDistance(a, b, Math.max(a.length(), b.length()));
+    }
+
+    /**
+     * Khoảng cách nếu <= maxDistance, ngược lại trả về maxDistance + 1 (không tính tiếp)
+     *
+     * @throws IllegalArgumentException nếu maxDistance < 0 (không có khoảng cách nào đạt)
+     */
+    public static int boundedDistance(CharSequence a, CharSequence b, int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance must not be negative: " + maxDistance);
+        }
+        // a là chuỗi ngắn hơn
+        if (a.length() > b.length()) {
+            CharSequence swap = a;
+            a = b;
+            b = swap;
+        }
+        int m = a.length();
+        int n = b.length();
+        if (n - m > maxDistance) {
+            return maxDistance + 1;
+        }
+        if (m == 0) {
+            return n;
+        }
+        return m <= 64 ? myers(a, b, maxDistance) : banded(a, b, maxDistance);
+    }
+
+    /**
+     * Ngưỡng khoảng cách lớn nhất để 1 - distance / maxLen > minSimilarity
+     * (tính đúng như phép so sánh double, -1 nếu chỉ chuỗi giống hệt mới đạt)
+     */
+    public static int maxDistanceFor(int maxLength, double minSimilarity) {
+        if (maxLength == 0) {
+            return 0;
+        }
+        int k = (int) Math.ceil(maxLength * (1 - minSimilarity));
+        while (k >= 0 && !(1.0 - (double) k / maxLength > minSimilarity)) {
+            k--;
+        }
+        return k;
+    }
+
+    /**
+     * 1 - distance / maxLen > minSimilarity, dừng sớm khi không thể đạt
+     */
+    public static boolean isSimilar(CharSequence a, CharSequence b, double minSimilarity) {
+        int maxLength = Math.max(a.length(), b.length());
+        if (maxLength == 0) {
+            return 1.0 > minSimilarity;
+        }
+        int k = maxDistanceFor(maxLength, minSimilarity);
+        return k >= 0 && boundedDistance(a, b, k) <= k;
+    }
+
+    /**
+     * Myers/Hyyrö bit-vector: cột DP của a (m <= 64 bit) cập nhật theo từng ký tự của b
+     */
+    private static int myers(CharSequence a, CharSequence b, int maxDistance) {
+        int m = a.length();
+        int n = b.length();
+        Buffers buffers = BUFFERS.get();
+        buffers.setPattern(a);
+        try {
+            long highBit = 1L << (m - 1);
+            long pv = -1L;
+            long mv = 0L;
+            int score = m;
+            for (int j = 0; j < n; j++) {
+                long eq = buffers.mask(b.charAt(j));
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & highBit) != 0) {
+                    score++;
+                } else if ((mh & highBit) != 0) {
+                    score--;
+                }
+                // Mỗi cột còn lại giảm score tối đa 1
+                if (score - (n - j - 1) > maxDistance) {
+                    return maxDistance + 1;
+                }
+                ph = (ph << 1) | 1L;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+            }
+            return score <= maxDistance ? score : maxDistance + 1;
+        } finally {
+            buffers.clearPattern(a);
+        }
+    }
+
+    /**
+     * DP hai hàng trong dải Ukkonen, giá trị ngoài dải coi như maxDistance + 1
+     */
+    private static int banded(CharSequence a, CharSequence b, int maxDistance) {
+        int m = a.length();
+        int n = b.length();
+        int limit = maxDistance + 1;
+        Buffers buffers = BUFFERS.get();
+        int[] previous = buffers.row(0, n + 1);
+        int[] current = buffers.row(1, n + 1);
+
+        for (int j = 0; j <= n; j++) {
+            previous[j] = Math.min(j, limit);
+        }
+
+        for (int i = 1; i <= m; i++) {
+            int from = Math.max(1, i - maxDistance);
+            int to = Math.min(n, i + maxDistance);
+            current[from - 1] = from == 1 ? Math.min(i, limit) : limit;
+            if (to < n) {
+                current[to + 1] = limit;
+            }
+
+            char c = a.charAt(i - 1);
+            int rowMin = current[from - 1];
+            for (int j = from; j <= to; j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                value = Math.min(value, limit);
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > maxDistance) {
+                return limit;
+            }
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[n], limit);
+    }
+
+    private static final class Buffers {
+        // Bitmask vị trí ký tự trong pattern: bảng trực tiếp cho ASCII, danh sách nhỏ cho ký tự khác
+        private final long[] asciiMasks = new long[128];
+        private final char[] otherChars = new char[64];
+        private final long[] otherMasks = new long[64];
+        private int otherCount;
+        private final int[][] rows = new int[2][32];
+
+        void setPattern(CharSequence pattern) {
+            otherCount = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                long bit = 1L << i;
+                if (c < 128) {
+                    asciiMasks[c] |= bit;
+                    continue;
+                }
+                int k = 0;
+                while (k < otherCount && otherChars[k] != c) {
+                    k++;
+                }
+                if (k == otherCount) {
+                    otherChars[k] = c;
+                    otherMasks[k] = 0L;
+                    otherCount++;
+                }
+                otherMasks[k] |= bit;
+            }
+        }
+
+        long mask(char c) {
+            if (c < 128) {
+                return asciiMasks[c];
+            }
+            for (int k = 0; k < otherCount; k++) {
+                if (otherChars[k] == c) {
+                    return otherMasks[k];
+                }
+            }
+            return 0L;
+        }
+
+        void clearPattern(CharSequence pattern) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c < 128) {
+                    asciiMasks[c] = 0L;
+                }
+            }
+            otherCount = 0;
+        }
+
+        int[] row(int index, int length) {
+            if (rows[index].length < length) {
+                rows[index] = new int[Math.max(length, rows[index].length * 2)];
+            }
+            return rows[index];
+        }
+    }
+}
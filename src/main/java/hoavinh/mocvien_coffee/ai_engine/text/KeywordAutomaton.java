@@ -0,0 +1,183 @@
+package hoavinh.mocvien_coffee.ai_engine.text;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Automaton Aho–Corasick: tìm tất cả keyword trong text chỉ với một lần duyệt
+ * - Chi phí tìm kiếm O(độ dài text + số match), không phụ thuộc số lượng keyword
+ * - Một keyword có thể gắn nhiều value (ví dụ "đặt" vừa là động từ order vừa là xác nhận)
+ * - Bất biến sau khi build, dùng chung giữa các thread không cần lock
+ *
+ * Automaton không tự normalize: keyword và text phải được chuẩn hóa cùng một cách trước khi đưa vào
+ */
+public final class KeywordAutomaton<T> {
+
+    private final boolean wholeWords;
+    // Chuyển trạng thái: keys[state] sắp xếp tăng dần, targets[state][i] tương ứng keys[state][i]
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] failure;
+    // Pattern kết thúc tại trạng thái (đã gộp theo failure link)
+    private final int[][] outputs;
+    private final List<Pattern<T>> patterns;
+
+    private KeywordAutomaton(boolean wholeWords, char[][] keys, int[][] targets, int[] failure,
+                             int[][] outputs, List<Pattern<T>> patterns) {
+        this.wholeWords = wholeWords;
+        this.keys = keys;
+        this.targets = targets;
+        this.failure = failure;
+        this.outputs = outputs;
+        this.patterns = patterns;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Tìm tất cả keyword xuất hiện trong text, theo thứ tự vị trí kết thúc
+     */
+    public List<Match<T>> findAll(CharSequence text) {
+        if (text == null || text.isEmpty() || patterns.isEmpty()) {
+            return List.of();
+        }
+        List<Match<T>> matches = new ArrayList<>();
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = Math.max(next, 0);
+
+            for (int patternIndex : outputs[state]) {
+                Pattern<T> pattern = patterns.get(patternIndex);
+                int start = i + 1 - pattern.keyword().length();
+                if (wholeWords && !(isBoundary(text, start - 1) && isBoundary(text, i + 1))) {
+                    continue;
+                }
+                matches.add(new Match<>(pattern.value(), pattern.keyword(), start, i + 1, pattern.weight()));
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+
+    private static boolean isBoundary(CharSequence text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    /**
+     * Một keyword tìm thấy: [start, end) trong text
+     */
+    public record Match<T>(T value, String keyword, int start, int end, double weight) {
+    }
+
+    private record Pattern<T>(String keyword, T value, double weight) {
+    }
+
+    public static final class Builder<T> {
+
+        private final List<Pattern<T>> patterns = new ArrayList<>();
+        private boolean wholeWords;
+
+        private Builder() {
+        }
+
+        public Builder<T> add(String keyword, T value) {
+            return add(keyword, value, 1.0);
+        }
+
+        public Builder<T> add(String keyword, T value, double weight) {
+            if (keyword != null && !keyword.isEmpty()) {
+                patterns.add(new Pattern<>(keyword, value, weight));
+            }
+            return this;
+        }
+
+        /**
+         * Chỉ match nguyên từ (hai đầu keyword không dính chữ/số), tránh "hi" khớp trong "chi"
+         */
+        public Builder<T> wholeWords(boolean wholeWords) {
+            this.wholeWords = wholeWords;
+            return this;
+        }
+
+        public KeywordAutomaton<T> build() {
+            // 1. Trie
+            List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+            List<List<Integer>> stateOutputs = new ArrayList<>();
+            trie.add(new TreeMap<>());
+            stateOutputs.add(new ArrayList<>());
+
+            for (int p = 0; p < patterns.size(); p++) {
+                String keyword = patterns.get(p).keyword();
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    Integer next = trie.get(state).get(keyword.charAt(i));
+                    if (next == null) {
+                        next = trie.size();
+                        trie.get(state).put(keyword.charAt(i), next);
+                        trie.add(new TreeMap<>());
+                        stateOutputs.add(new ArrayList<>());
+                    }
+                    state = next;
+                }
+                stateOutputs.get(state).add(p);
+            }
+
+            // 2. Failure link theo BFS, gộp output của trạng thái failure vào
+            int[] failure = new int[trie.size()];
+            Deque<Integer> queue = new ArrayDeque<>(trie.get(0).values());
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                for (Map.Entry<Character, Integer> edge : trie.get(state).entrySet()) {
+                    int child = edge.getValue();
+                    int fallback = failure[state];
+                    Integer target;
+                    while ((target = trie.get(fallback).get(edge.getKey())) == null && fallback != 0) {
+                        fallback = failure[fallback];
+                    }
+                    failure[child] = target != null && target != child ? target : 0;
+                    stateOutputs.get(child).addAll(stateOutputs.get(failure[child]));
+                    queue.add(child);
+                }
+            }
+
+            // 3. Đóng băng thành mảng
+            char[][] keys = new char[trie.size()][];
+            int[][] targets = new int[trie.size()][];
+            int[][] outputs = new int[trie.size()][];
+            for (int state = 0; state < trie.size(); state++) {
+                TreeMap<Character, Integer> edges = trie.get(state);
+                keys[state] = new char[edges.size()];
+                targets[state] = new int[edges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                    keys[state][i] = edge.getKey();
+                    targets[state][i] = edge.getValue();
+                    i++;
+                }
+                outputs[state] = stateOutputs.get(state).stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            return new KeywordAutomaton<>(wholeWords, keys, targets, failure, outputs, List.copyOf(patterns));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package hoavinh.mocvien_coffee.ai_engine.text;
+
+/**
+ * Chuẩn hóa tiếng Việt để so khớp: lowercase + bỏ dấu (à -> a, đ -> d...) + trim
+ * - Dùng bảng tra cứu dựng sẵn theo mã ký tự, một lần duyệt, không regex, không tạo chuỗi trung gian
+ * - Dấu dạng tổ hợp (NFD, ví dụ gõ trên macOS) cũng bị bỏ, kết quả giống dạng dựng sẵn
+ * - foldInto ghi vào StringBuilder có sẵn để dùng lại trong vòng lặp, không cấp phát
+ */
+public final class VietnameseNormalizer {
+
+    // Bảng tra cho U+0000..U+1EFF (Latin, Latin mở rộng, Latin Extended Additional chứa chữ có dấu tiếng Việt)
+    private static final int TABLE_SIZE = 0x1F00;
+    // Ký tự bị bỏ khỏi kết quả (dấu tổ hợp)
+    private static final char DROP = '\uFFFF';
+    private static final char[] FOLD = new char[TABLE_SIZE];
+
+    static {
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            FOLD[c] = Character.toLowerCase((char) c);
+        }
+        map("àáạảãâầấậẩẫăằắặẳẵ", 'a');
+        map("èéẹẻẽêềếệểễ", 'e');
+        map("ìíịỉĩ", 'i');
+        map("òóọỏõôồốộổỗơờớợởỡ", 'o');
+        map("ùúụủũưừứựửữ", 'u');
+        map("ỳýỵỷỹ", 'y');
+        map("đ", 'd');
+        // Combining Diacritical Marks
+        for (int c = 0x0300; c <= 0x036F; c++) {
+            FOLD[c] = DROP;
+        }
+    }
+
+    private VietnameseNormalizer() {
+    }
+
+    /**
+     * Lowercase, bỏ dấu, trim
+     */
+    public static String fold(CharSequence text) {
+        if (text == null) return "";
+        StringBuilder out = new StringBuilder(text.length());
+        foldInto(text, out, false);
+        return out.toString();
+    }
+
+    /**
+     * Như fold nhưng bỏ luôn mọi khoảng trắng ("Cà Phê Sữa" -> "caphesua")
+     */
+    public static String foldCompact(CharSequence text) {
+        if (text == null) return "";
+        StringBuilder out = new StringBuilder(text.length());
+        foldInto(text, out, true);
+        return out.toString();
+    }
+
+    /**
+     * Ghi bản chuẩn hóa của text vào out (xóa nội dung cũ của out trước)
+     *
+     * @param compact true để bỏ mọi khoảng trắng, false để chỉ trim hai đầu
+     */
+    public static void foldInto(CharSequence text, StringBuilder out, boolean compact) {
+        out.setLength(0);
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char folded = foldChar(text.charAt(i));
+            if (folded == DROP) {
+                continue;
+            }
+            if ((compact && isWhitespace(folded)) || (folded <= ' ' && out.length() == 0)) {
+                continue;
+            }
+            out.append(folded);
+        }
+        int end = out.length();
+        while (end > 0 && out.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        out.setLength(end);
+    }
+
+    private static char foldChar(char c) {
+        return c < TABLE_SIZE ? FOLD[c] : Character.toLowerCase(c);
+    }
+
+    private static void map(String accented, char base) {
+        for (int i = 0; i < accented.length(); i++) {
+            char lower = accented.charAt(i);
+            FOLD[lower] = base;
+            FOLD[Character.toUpperCase(lower)] = base;
+        }
+    }
+
+    // Cùng tập ký tự với \s của regex Java
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
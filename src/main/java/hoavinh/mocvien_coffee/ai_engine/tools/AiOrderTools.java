@@ -91,20 +91,26 @@ public class AiOrderTools {
                     "Anh/chị có thể xem menu hoặc nói lại tên món không ạ?", itemName);
         }
 
-        Product product = products.get(0);
-        
+        return addProductToCart(products.get(0), quantity, null, sessionId);
+        };
+    }
+
+    /**
+     * Thêm product đã xác định vào cart (không cần tìm trong Qdrant)
+     * Dùng chung cho tool addToCart và fast path của AiOrderAgentService
+     */
+    public String addProductToCart(Product product, int quantity, String note, String sessionId) {
         if (!product.isAvailable()) {
             return String.format("Xin lỗi, món '%s' hiện đang hết hàng ạ.", product.getName());
         }
 
         // Thêm vào cart
-        CartItem cartItem = new CartItem(product, quantity, null, product.getPrice());
+        CartItem cartItem = new CartItem(product, quantity, note, product.getPrice());
         conversationService.addToCart(sessionId, List.of(cartItem));
 
         return String.format("✅ Em đã thêm %d %s vào giỏ hàng (Giá: %s VNĐ). " +
                 "Anh/chị muốn thêm món nữa không ạ?",
                 quantity, product.getName(), formatPrice(cartItem.getSubtotal()));
-        };
     }
 
     /**
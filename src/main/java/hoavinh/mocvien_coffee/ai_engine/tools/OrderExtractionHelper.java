@@ -1,11 +1,12 @@
 package hoavinh.mocvien_coffee.ai_engine.tools;
 
+import hoavinh.mocvien_coffee.ai_engine.service.MenuNameIndex;
+import hoavinh.mocvien_coffee.ai_engine.text.VietnameseNormalizer;
 import hoavinh.mocvien_coffee.model.Product;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Helper class để extract order items từ natural language
@@ -13,57 +14,23 @@ import java.util.regex.Pattern;
 public class OrderExtractionHelper {
 
     /**
-     * Extract order items từ message
+     * Extract order items từ message, tìm product qua name index của menu snapshot
      * Format: "cho tôi 2 cà phê đen" -> {productName: "cà phê đen", quantity: 2}
      */
-    public static List<ExtractedItem> extractOrderItems(String message, List<Product> menu) {
+    public static List<ExtractedItem> extractOrderItems(String message, MenuNameIndex menu) {
         List<ExtractedItem> items = new ArrayList<>();
         
         if (message == null || message.isBlank() || menu == null) {
             return items;
         }
 
-        // Pattern để tìm số lượng và tên sản phẩm
-        // Ví dụ: "2 cà phê đen", "cho tôi 3 bánh mì", "1 ly nước cam"
-        Pattern pattern = Pattern.compile(
-                "(?:cho\\s+tôi|tôi\\s+muốn|lấy|mua|đặt)\\s*(\\d+)\\s+(.+?)(?:\\s+và|\\s+,|$)",
-                Pattern.CASE_INSENSITIVE
-        );
-
-        Matcher matcher = pattern.matcher(message);
-        
-        while (matcher.find()) {
-            try {
-                int quantity = Integer.parseInt(matcher.group(1));
-                String productText = matcher.group(2).trim();
-                
-                // Tìm product trong menu
-                Product matchedProduct = findProductInMenu(productText, menu);
-                if (matchedProduct != null) {
-                    items.add(new ExtractedItem(matchedProduct, quantity, null));
-                }
-            } catch (Exception e) {
-                // Skip invalid matches
-            }
-        }
-
-        // Nếu không tìm thấy pattern, thử tìm số đơn giản hơn
-        if (items.isEmpty()) {
-            Pattern simplePattern = Pattern.compile("(\\d+)\\s+(.+?)(?:\\s+và|\\s+,|$)", Pattern.CASE_INSENSITIVE);
-            Matcher simpleMatcher = simplePattern.matcher(message);
-            
-            while (simpleMatcher.find()) {
-                try {
-                    int quantity = Integer.parseInt(simpleMatcher.group(1));
-                    String productText = simpleMatcher.group(2).trim();
-                    
-                    Product matchedProduct = findProductInMenu(productText, menu);
-                    if (matchedProduct != null) {
-                        items.add(new ExtractedItem(matchedProduct, quantity, null));
-                    }
-                } catch (Exception e) {
-                    // Skip
-                }
+        // Tách câu thành (số lượng, tên món, ghi chú) trong một lần duyệt
+        // Ví dụ: "2 cà phê đen", "cho tôi ba bánh mì", "1 ly nước cam ít đá và trà đào x2"
+        for (OrderPhraseTokenizer.Segment segment : OrderPhraseTokenizer.tokenize(message)) {
+            // Tìm product trong menu
+            Product matchedProduct = findProduct(segment.productPhrase(), menu);
+            if (matchedProduct != null) {
+                items.add(new ExtractedItem(matchedProduct, segment.quantity(), segment.note()));
             }
         }
 
@@ -71,15 +38,21 @@ public class OrderExtractionHelper {
     }
 
     /**
-     * Tìm product trong menu từ text
+     * Tìm product trong menu từ text (tên món của một segment), null nếu không khớp
+     * Chỉ kiểm tra các ứng viên có chung bigram với text (theo thứ tự menu)
      */
-    private static Product findProductInMenu(String text, List<Product> menu) {
+    public static Product findProduct(String text, MenuNameIndex menu) {
         String normalized = normalize(text);
+        if (normalized.length() < 2) {
+            // Một ký tự ("ạ", "a") nằm trong gần như mọi tên món
+            return null;
+        }
+        BitSet candidates = menu.candidates(VietnameseNormalizer.foldCompact(text));
         
-        for (Product product : menu) {
-            String normalizedName = normalize(product.getName());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            String normalizedName = menu.foldedName(i);
             if (normalizedName.contains(normalized) || normalized.contains(normalizedName)) {
-                return product;
+                return menu.product(i);
             }
         }
         
@@ -90,16 +63,7 @@ public class OrderExtractionHelper {
      * Normalize text
      */
     private static String normalize(String text) {
-        if (text == null) return "";
-        return text.toLowerCase()
-                .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
-                .replaceAll("[èéẹẻẽêềếệểễ]", "e")
-                .replaceAll("[ìíịỉĩ]", "i")
-                .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
-                .replaceAll("[ùúụủũưừứựửữ]", "u")
-                .replaceAll("[ỳýỵỷỹ]", "y")
-                .replaceAll("[đ]", "d")
-                .trim();
+        return VietnameseNormalizer.fold(text);
     }
 
     /**
@@ -0,0 +1,350 @@
+package hoavinh.mocvien_coffee.ai_engine.tools;
+
+import hoavinh.mocvien_coffee.ai_engine.text.VietnameseNormalizer;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tách câu đặt món thành các đoạn (số lượng, tên món, ghi chú) trong một lần duyệt, không regex
+ * Ví dụ: "cho em hai ly cà phê sữa ít đá, 1 bánh mì và trà đào x2"
+ *   -> (2, "cà phê sữa", "ít đá"), (1, "bánh mì", null), (2, "trà đào", null)
+ *
+ * - Phân cách đoạn: "và", ",", ";", "+", "&", xuống dòng, hoặc một số mới xuất hiện sau tên món
+ * - Số lượng: chữ số, "x2", hoặc số đọc bằng chữ ("hai", "mười hai", "hai mươi"), có thể kèm đơn vị ("ly", "phần"...)
+ * - Số bằng chữ so đúng chính tả có dấu ("sáu" là số, "sầu" trong "sầu riêng" thì không) và chỉ tính khi ngay sau
+ *   là đơn vị hoặc tên món; gõ không dấu ("sau", "nam" trùng "sầu", "nấm") thì phải có đơn vị ("sau ly")
+ * - Ghi chú: bắt đầu từ "ít", "không", "nhiều", "ghi chú"... sau tên món, hoặc nằm trong ngoặc
+ * - Từ đệm đầu câu ("cho tôi", "lấy", "đặt"...) và cuối câu ("nhé", "ạ") bị bỏ
+ *
+ * So khớp từ khóa trên dạng đã bỏ dấu (VietnameseNormalizer), tên món giữ nguyên như khách gõ
+ */
+public final class OrderPhraseTokenizer {
+
+    // Số bằng chữ theo chính tả có dấu (lowercase), "mươi" là hàng chục trong "hai mươi"
+    private static final Map<String, Integer> NUMBER_WORDS = Map.ofEntries(
+            Map.entry("một", 1), Map.entry("hai", 2), Map.entry("ba", 3), Map.entry("bốn", 4),
+            Map.entry("tư", 4), Map.entry("năm", 5), Map.entry("sáu", 6), Map.entry("bảy", 7),
+            Map.entry("bẩy", 7), Map.entry("tám", 8), Map.entry("chín", 9), Map.entry("mười", 10),
+            Map.entry("mươi", 10)
+    );
+
+    // Cùng các số đó khi khách gõ không dấu
+    private static final Map<String, Integer> UNACCENTED_NUMBER_WORDS = Map.ofEntries(
+            Map.entry("mot", 1), Map.entry("hai", 2), Map.entry("ba", 3), Map.entry("bon", 4),
+            Map.entry("tu", 4), Map.entry("nam", 5), Map.entry("sau", 6), Map.entry("bay", 7),
+            Map.entry("tam", 8), Map.entry("chin", 9), Map.entry("muoi", 10)
+    );
+
+    // Hàng đơn vị chỉ dùng sau "mười" / "mươi": "mười lăm", "hai mươi mốt"
+    private static final Map<String, Integer> TAIL_NUMBER_WORDS = Map.of(
+            "mốt", 1, "lăm", 5, "nhăm", 5, "lam", 5, "nham", 5
+    );
+
+    // Đơn vị ngay sau số lượng ("ca" không có vì trùng "cà" trong "cà phê", "o" không có vì trùng "ô" trong "ô long")
+    private static final Set<String> UNITS = Set.of(
+            "ly", "coc", "tach", "chai", "lon", "phan", "cai", "suat", "dia", "mieng", "hop", "goi", "cup", "binh"
+    );
+
+    private static final Set<String> LEADING_FILLERS = Set.of(
+            "cho", "toi", "tui", "em", "minh", "anh", "chi", "ban", "lay", "mua", "dat", "muon", "order", "them", "goi"
+    );
+
+    // Xưng hô chỉ bỏ khi gõ đúng dấu (dạng không dấu "ba", "co" trùng số lượng / từ khác)
+    private static final Set<String> ACCENTED_LEADING_FILLERS = Set.of(
+            "bà", "ông", "cô", "chú", "bác"
+    );
+
+    private static final Set<String> TRAILING_FILLERS = Set.of(
+            "nhe", "nha", "nhen", "a", "voi", "di"
+    );
+
+    private static final Set<String> NOTE_MARKERS = Set.of(
+            "it", "khong", "nhieu", "ghi", "note", "size"
+    );
+
+    private static final String AND_WORD = "va";
+
+    private OrderPhraseTokenizer() {
+    }
+
+    /**
+     * Một món trong câu đặt: quantity mặc định 1 nếu khách không nói số lượng
+     */
+    public record Segment(int quantity, String productPhrase, String note, boolean explicitQuantity) {
+    }
+
+    public static List<Segment> tokenize(String message) {
+        List<Segment> segments = new ArrayList<>();
+        if (message == null || message.isBlank()) {
+            return segments;
+        }
+
+        SegmentBuilder current = new SegmentBuilder();
+        List<Word> words = splitWords(message);
+        for (int i = 0; i < words.size(); i++) {
+            Word word = words.get(i);
+
+            if (word.separator() || AND_WORD.equals(word.folded())) {
+                current.flushTo(segments);
+                continue;
+            }
+            if (word.parenthesized()) {
+                current.appendNote(word);
+                continue;
+            }
+
+            // Số lượng: chữ số / x2 / số bằng chữ (chỉ ở vị trí đầu đoạn)
+            int quantity = parseDigits(word.folded());
+            int consumed = 1;
+            if (quantity < 0 && current.isEmpty()) {
+                int[] parsed = parseNumberWords(words, i);
+                quantity = parsed[0];
+                consumed = parsed[1];
+            }
+            if (quantity > 0) {
+                if (current.hasQuantity()) {
+                    // Số mới sau một món đã có số lượng -> món tiếp theo ("2 cà phê 3 trà")
+                    current.flushTo(segments);
+                }
+                // Số đứng sau tên món ("trà đào x2") thì món đó đã kết thúc
+                current.quantityAfterProduct = current.hasProduct();
+                current.quantity = quantity;
+                i += consumed - 1;
+                // Bỏ đơn vị ngay sau số lượng
+                if (i + 1 < words.size() && UNITS.contains(words.get(i + 1).folded())) {
+                    i++;
+                }
+                continue;
+            }
+
+            if (!current.hasProduct() && (LEADING_FILLERS.contains(word.folded())
+                    || ACCENTED_LEADING_FILLERS.contains(word.lower()))) {
+                continue;
+            }
+            if (current.hasProduct() && (current.inNote() || NOTE_MARKERS.contains(word.folded()))) {
+                current.appendNote(word);
+                continue;
+            }
+            if (current.quantityAfterProduct) {
+                current.flushTo(segments);
+            }
+            current.appendProduct(word);
+        }
+        current.flushTo(segments);
+        return segments;
+    }
+
+    /**
+     * Tách từ + dấu phân cách trong một lần duyệt, phần trong ngoặc () đánh dấu là ghi chú
+     */
+    private static List<Word> splitWords(String message) {
+        List<Word> words = new ArrayList<>();
+        StringBuilder folded = new StringBuilder();
+        int start = -1;
+        int depth = 0;
+        for (int i = 0; i <= message.length(); i++) {
+            char c = i < message.length() ? message.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || (start >= 0 && Character.getType(c) == Character.NON_SPACING_MARK)) {
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+            if (start >= 0) {
+                String text = message.substring(start, i);
+                VietnameseNormalizer.foldInto(text, folded, false);
+                String lower = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+                words.add(new Word(text, lower, folded.toString(), false, depth > 0));
+                start = -1;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+            } else if (depth == 0 && (c == ',' || c == ';' || c == '+' || c == '&' || c == '\n' || c == '.')) {
+                String separator = String.valueOf(c);
+                words.add(new Word(separator, separator, separator, true, false));
+            }
+        }
+        return words;
+    }
+
+    /**
+     * "2", "x2", "2x" -> 2; không phải số -> -1
+     */
+    private static int parseDigits(String folded) {
+        int from = 0;
+        int to = folded.length();
+        if (to > 1 && folded.charAt(0) == 'x') {
+            from = 1;
+        } else if (to > 1 && folded.charAt(to - 1) == 'x') {
+            to--;
+        }
+        if (from >= to || to - from > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = folded.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Số đọc bằng chữ bắt đầu tại index: "hai", "mười", "mười hai", "hai mươi", "hai mươi lăm"
+     * Chỉ nhận khi từ ngay sau là đơn vị, hoặc là tên món và số được gõ có dấu
+     *
+     * @return {giá trị (-1 nếu không phải số lượng), số từ đã dùng}
+     */
+    private static int[] parseNumberWords(List<Word> words, int index) {
+        int[] parsed = readNumberWords(words, index);
+        if (parsed[0] < 0) {
+            return parsed;
+        }
+        int next = index + parsed[1];
+        if (next < words.size() && UNITS.contains(words.get(next).folded())) {
+            return parsed;
+        }
+        // Đúng chính tả ("sáu", "hai", "ba") mới được theo sau trực tiếp bằng tên món
+        boolean exactSpelling = NUMBER_WORDS.containsKey(words.get(index).lower());
+        return exactSpelling && isProductWord(words, next) ? parsed : new int[]{-1, 1};
+    }
+
+    private static int[] readNumberWords(List<Word> words, int index) {
+        Integer first = numberWord(words, index, false);
+        if (first == null) {
+            return new int[]{-1, 1};
+        }
+        if (first == 10) {
+            // "mười hai" = 12, "mười lăm" = 15
+            Integer second = numberWord(words, index + 1, true);
+            return second != null && second < 10 ? new int[]{10 + second, 2} : new int[]{10, 1};
+        }
+        Integer second = numberWord(words, index + 1, false);
+        if (second != null && second == 10) {
+            // "hai mươi" = 20, "hai mươi lăm" = 25
+            Integer third = numberWord(words, index + 2, true);
+            return third != null && third < 10
+                    ? new int[]{first * 10 + third, 3}
+                    : new int[]{first * 10, 2};
+        }
+        return new int[]{first, 1};
+    }
+
+    /**
+     * Giá trị của một từ số, null nếu không phải
+     *
+     * @param tail true nếu đứng sau "mười" / "mươi" (nhận thêm "mốt", "lăm", "nhăm")
+     */
+    private static Integer numberWord(List<Word> words, int index, boolean tail) {
+        if (index >= words.size() || words.get(index).separator()) {
+            return null;
+        }
+        Word word = words.get(index);
+        if (tail && TAIL_NUMBER_WORDS.containsKey(word.lower())) {
+            return TAIL_NUMBER_WORDS.get(word.lower());
+        }
+        Integer value = NUMBER_WORDS.get(word.lower());
+        if (value == null && word.unaccented()) {
+            value = UNACCENTED_NUMBER_WORDS.get(word.folded());
+        }
+        return value;
+    }
+
+    /**
+     * Từ tại index có thể là đầu tên món (không phải phân cách, "và", ghi chú hay số khác)
+     */
+    private static boolean isProductWord(List<Word> words, int index) {
+        if (index >= words.size()) {
+            return false;
+        }
+        Word word = words.get(index);
+        return !word.separator()
+                && !word.parenthesized()
+                && !AND_WORD.equals(word.folded())
+                && !NOTE_MARKERS.contains(word.folded())
+                && !TRAILING_FILLERS.contains(word.folded())
+                && parseDigits(word.folded()) < 0;
+    }
+
+    /**
+     * @param lower  text lowercase dạng NFC (giữ dấu)
+     * @param folded text đã bỏ dấu
+     */
+    private record Word(String text, String lower, String folded, boolean separator, boolean parenthesized) {
+
+        boolean unaccented() {
+            return lower.equals(folded);
+        }
+    }
+
+    private static final class SegmentBuilder {
+        int quantity;
+        boolean quantityAfterProduct;
+        final List<Word> product = new ArrayList<>();
+        final List<Word> note = new ArrayList<>();
+
+        boolean isEmpty() {
+            return quantity == 0 && product.isEmpty() && note.isEmpty();
+        }
+
+        boolean hasQuantity() {
+            return quantity > 0 && hasProduct();
+        }
+
+        boolean hasProduct() {
+            return !product.isEmpty();
+        }
+
+        boolean inNote() {
+            return !note.isEmpty();
+        }
+
+        void appendProduct(Word word) {
+            product.add(word);
+        }
+
+        void appendNote(Word word) {
+            note.add(word);
+        }
+
+        void flushTo(List<Segment> segments) {
+            stripTrailingFillers(product);
+            stripTrailingFillers(note);
+            if (!product.isEmpty()) {
+                segments.add(new Segment(quantity > 0 ? quantity : 1, join(product),
+                        note.isEmpty() ? null : join(note), quantity > 0));
+            }
+            quantity = 0;
+            quantityAfterProduct = false;
+            product.clear();
+            note.clear();
+        }
+
+        private static void stripTrailingFillers(List<Word> words) {
+            while (!words.isEmpty() && TRAILING_FILLERS.contains(words.get(words.size() - 1).folded())) {
+                words.remove(words.size() - 1);
+            }
+        }
+
+        private static String join(List<Word> words) {
+            StringBuilder text = new StringBuilder();
+            for (Word word : words) {
+                if (!text.isEmpty()) {
+                    text.append(' ');
+                }
+                text.append(word.text());
+            }
+            return text.toString();
+        }
+    }
+}
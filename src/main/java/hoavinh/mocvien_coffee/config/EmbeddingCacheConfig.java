@@ -0,0 +1,43 @@
+package hoavinh.mocvien_coffee.config;
+
+import hoavinh.mocvien_coffee.ai_engine.embedding.CachingEmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Path;
+
+/**
+ * Bọc EmbeddingModel do Spring AI auto-config tạo ra (Ollama) bằng CachingEmbeddingModel
+ * VectorStore (Qdrant) và mọi service inject EmbeddingModel đều dùng bản có cache
+ */
+@Configuration
+public class EmbeddingCacheConfig {
+
+    @Bean
+    public static BeanPostProcessor embeddingCachePostProcessor(Environment environment) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof EmbeddingModel embeddingModel) || bean instanceof CachingEmbeddingModel) {
+                    return bean;
+                }
+                if (!environment.getProperty("app.ai.embedding-cache.enabled", Boolean.class, true)) {
+                    return bean;
+                }
+
+                String modelName = environment.getProperty("spring.ai.ollama.embedding.model", "nomic-embed-text");
+                int maxEntries = environment.getProperty("app.ai.embedding-cache.max-entries", Integer.class, 10_000);
+                String dir = environment.getProperty("app.ai.embedding-cache.dir", "");
+                Path diskDirectory = dir.isBlank() ? null : Path.of(dir);
+                int maxDiskEntries = environment.getProperty("app.ai.embedding-cache.max-disk-entries", Integer.class, 20_000);
+
+                System.out.println("🔧 Embedding cache enabled for bean '" + beanName + "' (max " + maxEntries
+                        + " entries" + (diskDirectory != null ? ", disk: " + diskDirectory + ", max " + maxDiskEntries + " files" : "") + ")");
+                return new CachingEmbeddingModel(embeddingModel, modelName, maxEntries, diskDirectory, maxDiskEntries);
+            }
+        };
+    }
+}
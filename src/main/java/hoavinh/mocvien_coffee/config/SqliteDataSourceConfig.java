@@ -0,0 +1,92 @@
+package hoavinh.mocvien_coffee.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.sqlite.SQLiteConfig;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource cho SQLite (profile "sqlite", xem application-sqlite.properties)
+ * - WAL: người đọc không chặn người ghi và ngược lại, synchronous=NORMAL đủ an toàn với WAL
+ * - Ghi: pool chỉ 1 connection (SQLite chỉ cho một writer), các transaction ghi xếp hàng trong pool
+ *   thay vì tranh lock file rồi gặp SQLITE_BUSY
+ *   -> transaction ghi phải ngắn: không embed / gọi Qdrant khi đang giữ connection này
+ *   (ProductService sync sau commit, QdrantMenuService sync trong transaction readOnly)
+ * - Đọc: pool connection mở read-only, dùng cho transaction readOnly (Spring Data find*, DashboardService)
+ * - Chọn pool theo cờ read-only của transaction (LazyConnectionDataSourceProxy chỉ lấy connection thật
+ *   ở câu SQL đầu tiên, lúc đó đã biết transaction có readOnly hay không)
+ */
+@Configuration
+@Profile("sqlite")
+public class SqliteDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource sqliteWriterDataSource(
+            @Value("${spring.datasource.url}") String url,
+            @Value("${app.sqlite.busy-timeout-ms:5000}") int busyTimeoutMillis,
+            @Value("${app.sqlite.cache-size-kb:20000}") int cacheSizeKb,
+            @Value("${app.sqlite.mmap-size-bytes:268435456}") long mmapSizeBytes) {
+        SQLiteConfig sqlite = baseConfig(busyTimeoutMillis, cacheSizeKb);
+        // journal_mode lưu trong file DB, chỉ cần writer đặt một lần
+        sqlite.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        sqlite.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+
+        HikariConfig config = poolConfig("sqlite-writer", url, sqlite, mmapSizeBytes);
+        config.setMaximumPoolSize(1);
+        return new HikariDataSource(config);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource sqliteReaderDataSource(
+            HikariDataSource sqliteWriterDataSource,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${app.sqlite.busy-timeout-ms:5000}") int busyTimeoutMillis,
+            @Value("${app.sqlite.cache-size-kb:20000}") int cacheSizeKb,
+            @Value("${app.sqlite.mmap-size-bytes:268435456}") long mmapSizeBytes,
+            @Value("${app.sqlite.reader-pool-size:4}") int readerPoolSize) {
+        // Phụ thuộc writer: file DB đã được tạo và chuyển sang WAL trước khi mở read-only
+        SQLiteConfig sqlite = baseConfig(busyTimeoutMillis, cacheSizeKb);
+        sqlite.setReadOnly(true);
+
+        HikariConfig config = poolConfig("sqlite-reader", url, sqlite, mmapSizeBytes);
+        config.setMaximumPoolSize(Math.max(1, readerPoolSize));
+        config.setReadOnly(true);
+        return new HikariDataSource(config);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource sqliteWriterDataSource, HikariDataSource sqliteReaderDataSource) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(sqliteWriterDataSource);
+        routing.setReadOnlyDataSource(sqliteReaderDataSource);
+        System.out.println("🗄️ SQLite WAL: 1 writer connection, " + sqliteReaderDataSource.getMaximumPoolSize()
+                + " read-only connections");
+        return routing;
+    }
+
+    private static SQLiteConfig baseConfig(int busyTimeoutMillis, int cacheSizeKb) {
+        SQLiteConfig sqlite = new SQLiteConfig();
+        sqlite.setBusyTimeout(busyTimeoutMillis);
+        // cache_size âm = đơn vị KiB thay vì số page
+        sqlite.setCacheSize(-Math.abs(cacheSizeKb));
+        return sqlite;
+    }
+
+    private static HikariConfig poolConfig(String poolName, String url, SQLiteConfig sqlite, long mmapSizeBytes) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setJdbcUrl(url);
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setDataSourceProperties(sqlite.toProperties());
+        // mmap_size không có trong SQLiteConfig, đặt mỗi khi mở connection
+        config.setConnectionInitSql("PRAGMA mmap_size=" + mmapSizeBytes);
+        return config;
+    }
+}
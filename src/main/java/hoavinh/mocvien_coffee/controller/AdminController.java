@@ -16,8 +16,11 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.util.List;
+
 @Controller
 @RequestMapping("/admin")
 public class AdminController {
@@ -82,6 +85,18 @@ public class AdminController {
         return "redirect:/admin/products";
     }
 
+    @PostMapping("/products/delete")
+    public String deleteProducts(@RequestParam(name = "ids", required = false) List<Long> ids,
+                                 RedirectAttributes redirectAttributes) {
+        if (ids == null || ids.isEmpty()) {
+            redirectAttributes.addFlashAttribute("error", "No products selected");
+            return "redirect:/admin/products";
+        }
+        productService.deleteAll(ids);
+        redirectAttributes.addFlashAttribute("success", ids.size() + " products deleted");
+        return "redirect:/admin/products";
+    }
+
     @GetMapping("/tables")
     public String tables(Model model) {
         model.addAttribute("tables", tableService.findAll());
@@ -5,7 +5,7 @@ import hoavinh.mocvien_coffee.dto.OrderRequest;
 import hoavinh.mocvien_coffee.model.Product;
 import hoavinh.mocvien_coffee.model.User;
 import hoavinh.mocvien_coffee.repository.UserRepository;
-import hoavinh.mocvien_coffee.service.OrderService;
+import hoavinh.mocvien_coffee.service.OrderIntakeService;
 import hoavinh.mocvien_coffee.service.ProductService;
 import hoavinh.mocvien_coffee.service.TableService;
 import jakarta.validation.Valid;
@@ -27,18 +27,18 @@ import java.util.stream.Collectors;
 public class PosRestController {
 
     private final ProductService productService;
-    private final OrderService orderService;
     private final UserRepository userRepository;
     private final TableService tableService;
+    private final OrderIntakeService orderIntakeService;
 
     public PosRestController(ProductService productService,
-                             OrderService orderService,
                              UserRepository userRepository,
-                             TableService tableService) {
+                             TableService tableService,
+                             OrderIntakeService orderIntakeService) {
         this.productService = productService;
-        this.orderService = orderService;
         this.userRepository = userRepository;
         this.tableService = tableService;
+        this.orderIntakeService = orderIntakeService;
     }
 
     @GetMapping("/products")
@@ -69,11 +69,23 @@ public class PosRestController {
                                          Authentication authentication) {
         User user = userRepository.findByUsername(authentication.getName())
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        var order = orderService.createOrder(request, user);
-        return ResponseEntity.ok(java.util.Map.of(
-                "orderId", order.getId(),
-                "createdAt", order.getCreatedAt().toString()
-        ));
+        // Ghi ngay hoặc qua hàng đợi tùy app.pos.order-intake.mode, gửi lại cùng idempotencyKey trả order cũ
+        var receipt = orderIntakeService.place(request, user);
+        var body = new java.util.LinkedHashMap<String, Object>();
+        body.put("orderId", receipt.orderId());
+        if (receipt.createdAt() != null) {
+            body.put("createdAt", receipt.createdAt().toString());
+        }
+        body.put("status", receipt.status());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Order đã ack nhưng bị bỏ khi ghi DB (món / bàn đã bị xóa...), để nhập lại bằng tay
+     */
+    @GetMapping("/orders/dropped")
+    public List<OrderIntakeService.DroppedOrder> droppedOrders() {
+        return orderIntakeService.getDroppedOrders();
     }
 
     private CafeTableDto toDto(hoavinh.mocvien_coffee.model.CafeTable table) {
@@ -1,20 +1,33 @@
 package hoavinh.mocvien_coffee.controller.ai;
 
 import hoavinh.mocvien_coffee.ai_engine.service.AiOrderAgentService;
+import hoavinh.mocvien_coffee.ai_engine.service.ConversationService;
+import hoavinh.mocvien_coffee.ai_engine.service.FastPathMetrics;
 import hoavinh.mocvien_coffee.dto.AiOrderRequest;
 import hoavinh.mocvien_coffee.dto.AiOrderResponse;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/ai/order")
 public class AiOrderController {
 
     private final AiOrderAgentService aiOrderAgentService;
+    private final FastPathMetrics fastPathMetrics;
+    private final ConversationService conversationService;
 
-    public AiOrderController(AiOrderAgentService aiOrderAgentService) {
+    public AiOrderController(AiOrderAgentService aiOrderAgentService,
+                             FastPathMetrics fastPathMetrics,
+                             ConversationService conversationService) {
         this.aiOrderAgentService = aiOrderAgentService;
+        this.fastPathMetrics = fastPathMetrics;
+        this.conversationService = conversationService;
     }
 
     /**
@@ -41,6 +54,43 @@ public class AiOrderController {
         }
     }
 
+    /**
+     * Bản streaming của /chat (Server-Sent Events)
+     * POST /ai/order/chat/stream
+     * - event "token": {"token": "..."} từng đoạn text ngay khi LLM sinh ra
+     * - event "done": AiOrderResponse đầy đủ (giỏ hàng, tổng tiền, orderId)
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStream(@RequestBody AiOrderRequest request) {
+        return Flux.defer(() -> aiOrderAgentService.streamCustomerMessage(request))
+                .map(event -> event.isDone()
+                        ? ServerSentEvent.<Object>builder(event.response()).event("done").build()
+                        : ServerSentEvent.<Object>builder(Map.of("token", event.token())).event("token").build())
+                .onErrorResume(e -> {
+                    e.printStackTrace(); // Log error
+                    AiOrderResponse errorResponse = new AiOrderResponse(
+                            "Xin lỗi, có lỗi xảy ra. Anh/chị vui lòng thử lại ạ.",
+                            hoavinh.mocvien_coffee.ai_engine.advisors.OrderIntent.UNKNOWN,
+                            java.util.Collections.emptyList(),
+                            null,
+                            null,
+                            false
+                    );
+                    return Flux.just(ServerSentEvent.<Object>builder(errorResponse).event("error").build());
+                });
+    }
+
+    /**
+     * Tỉ lệ message trả lời bằng fast path (không gọi LLM) và số session chat
+     * GET /ai/order/metrics
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(fastPathMetrics.snapshot());
+        metrics.put("sessions", conversationService.getSessionMetrics());
+        return ResponseEntity.ok(metrics);
+    }
+
     /**
      * Health check endpoint
      */
@@ -1,19 +1,23 @@
 package hoavinh.mocvien_coffee.controller.ai;
 
+import hoavinh.mocvien_coffee.ai_engine.service.LlmOverloadedException;
+import hoavinh.mocvien_coffee.ai_engine.service.LlmRequestScheduler;
 import hoavinh.mocvien_coffee.ai_engine.service.MenuContextService;
 import hoavinh.mocvien_coffee.ai_engine.service.QdrantMenuService;
+import hoavinh.mocvien_coffee.ai_engine.service.SemanticAnswerCache;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -24,20 +28,23 @@ import java.util.stream.Collectors;
 public class RagController {
 
     private final ChatClient chatClient;
-    private final VectorStore vectorStore;
     private final MenuContextService menuContextService;
     private final QdrantMenuService qdrantMenuService;
+    private final SemanticAnswerCache semanticAnswerCache;
+    private final LlmRequestScheduler llmRequestScheduler;
 
     public RagController(ChatClient.Builder chatClientBuilder, 
-                         VectorStore vectorStore,
                          MenuContextService menuContextService,
-                         QdrantMenuService qdrantMenuService) {
+                         QdrantMenuService qdrantMenuService,
+                         SemanticAnswerCache semanticAnswerCache,
+                         LlmRequestScheduler llmRequestScheduler) {
         this.chatClient = chatClientBuilder
                 .defaultSystem("Bạn là nhân viên AI của quán Mộc Miên.")
                 .build();
-        this.vectorStore = vectorStore;
         this.menuContextService = menuContextService;
         this.qdrantMenuService = qdrantMenuService;
+        this.semanticAnswerCache = semanticAnswerCache;
+        this.llmRequestScheduler = llmRequestScheduler;
     }
 
     @GetMapping("/ai/load")
@@ -53,11 +60,20 @@ public class RagController {
     @GetMapping(value = "/ai/ask", produces = MediaType.TEXT_PLAIN_VALUE + ";charset=UTF-8")
     public Flux<String> askAi(@RequestParam String question) {
 
+        // --- BƯỚC 0: SEMANTIC CACHE (câu hỏi gần giống đã trả lời với menu hiện tại) ---
+        long startCache = System.currentTimeMillis();
+        SemanticAnswerCache.CacheKey cacheKey = semanticAnswerCache.keyFor(question);
+        var cachedAnswer = semanticAnswerCache.lookup(cacheKey);
+        if (cachedAnswer.isPresent()) {
+            System.out.printf(">>> [0] Semantic cache HIT: %d ms%n", System.currentTimeMillis() - startCache);
+            return Flux.fromIterable(cachedAnswer.get());
+        }
+
         // --- BƯỚC 1: RETRIEVAL (Đo đạc) ---
         long startRetrieval = System.currentTimeMillis();
 
         // Tìm kiếm Top 2 documents (Tối ưu cho RAM ít, đừng tham Top 5-10)
-        List<Document> similarDocuments = vectorStore.similaritySearch(
+        List<Document> similarDocuments = qdrantMenuService.similaritySearch(
                 SearchRequest.builder().query(question).topK(2).build()
         );
 
@@ -91,11 +107,13 @@ public class RagController {
         // Dùng Atomic để thread-safe trong Flux
         AtomicBoolean isFirstToken = new AtomicBoolean(true);
         AtomicLong firstTokenTime = new AtomicLong(0);
+        List<String> generatedChunks = Collections.synchronizedList(new ArrayList<>());
 
-        return chatClient.prompt(prompt)
-                .stream()
-                .content()
+        // Qua scheduler: hỏi menu ưu tiên NORMAL, quá tải thì từ chối ngay
+        return llmRequestScheduler.stream(LlmRequestScheduler.Priority.NORMAL,
+                        () -> chatClient.prompt(prompt).stream().content())
                 .doOnNext(token -> {
+                    generatedChunks.add(token);
                     // Bắt khoảnh khắc Token đầu tiên xuất hiện (TTFT)
                     if (isFirstToken.getAndSet(false)) {
                         long ttft = System.currentTimeMillis() - startGen;
@@ -111,7 +129,11 @@ public class RagController {
                     System.out.printf(">>> [3] Total Generation: %d ms | Generation Time (trừ TTFT): %d ms%n",
                             totalTime, (totalTime - ttft));
                     System.out.println("--------------------------------------------------");
+                    // Chỉ cache khi stream hoàn tất (không cache câu trả lời bị lỗi/bị huỷ giữa chừng)
+                    semanticAnswerCache.put(cacheKey, generatedChunks);
                 })
-                .doOnError(e -> System.err.println(">>> [ERROR]: " + e.getMessage()));
+                .doOnError(e -> System.err.println(">>> [ERROR]: " + e.getMessage()))
+                .onErrorResume(LlmOverloadedException.class,
+                        e -> Flux.just(LlmOverloadedException.FRIENDLY_MESSAGE));
     }
 }
\ No newline at end of file
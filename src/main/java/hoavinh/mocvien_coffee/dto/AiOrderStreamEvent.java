@@ -0,0 +1,23 @@
+package hoavinh.mocvien_coffee.dto;
+
+/**
+ * Event của /ai/order/chat/stream
+ * - token: một đoạn text vừa được sinh ra
+ * - done: event cuối, mang AiOrderResponse đầy đủ (giỏ hàng, tổng tiền, orderId)
+ */
+public record AiOrderStreamEvent(
+        String token,
+        AiOrderResponse response
+) {
+    public static AiOrderStreamEvent token(String token) {
+        return new AiOrderStreamEvent(token, null);
+    }
+
+    public static AiOrderStreamEvent done(AiOrderResponse response) {
+        return new AiOrderStreamEvent(null, response);
+    }
+
+    public boolean isDone() {
+        return response != null;
+    }
+}
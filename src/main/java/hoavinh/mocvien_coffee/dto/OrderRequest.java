@@ -10,6 +10,7 @@ public record OrderRequest(Long tableId,
                            String surchargeName,
                            Double customerCash,
                            Double changeAmount,
-                           List<OrderItemRequest> items) {
+                           List<OrderItemRequest> items,
+                           String idempotencyKey) {
 }
 
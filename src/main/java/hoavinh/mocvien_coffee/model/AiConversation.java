@@ -0,0 +1,42 @@
+package hoavinh.mocvien_coffee.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conversation của chat AI đã lưu xuống DB (cart, số bàn) để không mất khi restart
+ */
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ai_conversations")
+public class AiConversation {
+
+    @Id
+    private String sessionId;
+
+    private String tableNumber;
+
+    private LocalDateTime lastActivity;
+
+    // List<CartItemDto> dạng JSON
+    @Column(columnDefinition = "TEXT")
+    private String cartJson;
+
+    @Column(columnDefinition = "TEXT")
+    private String metadataJson;
+
+    private LocalDateTime updatedAt;
+}
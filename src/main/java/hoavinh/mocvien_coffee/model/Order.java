@@ -17,11 +17,11 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "orders")
-public class Order {
+@Table(name = "orders", indexes = @Index(name = "ux_orders_idempotency_key", columnList = "idempotency_key", unique = true))
+public class Order implements SequentialIdGenerator.Preassigned {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SequentialId
     private Long id;
 
     @Column(nullable = false)
@@ -54,5 +54,13 @@ public class Order {
     private Double surchargeAmount;
     private Double customerCash;
     private Double changeAmount;
+
+    // Key do client sinh cho mỗi lần thanh toán, gửi lại cùng key thì không tạo order mới
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+
+    // Id đã cấp lúc nhận order qua hàng đợi (OrderIntakeService), không lưu cột riêng
+    @Transient
+    private Long reservedId;
 }
 
@@ -0,0 +1,17 @@
+package hoavinh.mocvien_coffee.model;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Id cấp trong bộ nhớ (SequentialIdGenerator) thay cho IDENTITY để Hibernate gom được các lệnh INSERT thành batch
+ */
+@IdGeneratorType(SequentialIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface SequentialId {
+}
@@ -0,0 +1,96 @@
+package hoavinh.mocvien_coffee.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.hibernate.mapping.PersistentClass;
+
+import java.lang.reflect.Member;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Sequence giả lập cho SQLite (dialect không có sequence)
+ * - IDENTITY bắt Hibernate INSERT từng dòng ngay để lấy id, không batch được
+ * - Ở đây id lấy từ bộ đếm trong bộ nhớ, lần đầu dùng thì khởi tạo bằng MAX(id) của bảng (một query),
+ *   sau đó cấp id không cần round trip nào -> order và các order item INSERT chung một batch
+ * - Đúng vì chỉ một process (app này) ghi vào file SQLite; rollback chỉ để lại khoảng trống id
+ * - Có thể giữ trước id (reserve) cho entity sẽ persist sau, entity đó implement Preassigned
+ */
+public class SequentialIdGenerator implements IdentifierGenerator {
+
+    // Generator theo tên bảng, để reserve/advancePast không cần đi qua Hibernate
+    private static final Map<String, SequentialIdGenerator> GENERATORS = new ConcurrentHashMap<>();
+
+    /**
+     * Entity mang sẵn id đã reserve (null = cấp id mới như bình thường)
+     */
+    public interface Preassigned {
+        Long getReservedId();
+    }
+
+    private final String table;
+    private final String column;
+    private final AtomicLong lastId = new AtomicLong();
+    private volatile boolean initialized;
+
+    public SequentialIdGenerator(SequentialId config, Member member, CustomIdGeneratorCreationContext context) {
+        PersistentClass entity = context.getPersistentClass();
+        this.table = entity.getTable().getName();
+        this.column = entity.getIdentifier().getColumns().get(0).getName();
+        GENERATORS.put(table, this);
+    }
+
+    /**
+     * Giữ trước một id của bảng, dùng khi cần trả id cho client trước khi INSERT
+     *
+     * @param currentMaxId MAX(id) hiện tại của bảng, chỉ gọi nếu generator chưa khởi tạo
+     */
+    public static long reserve(String table, LongSupplier currentMaxId) {
+        SequentialIdGenerator generator = generatorFor(table);
+        generator.initialize(currentMaxId);
+        return generator.lastId.incrementAndGet();
+    }
+
+    /**
+     * Đánh dấu id đã được dùng ở nơi khác (ví dụ id đã reserve còn nằm trong log), không cấp lại
+     */
+    public static void advancePast(String table, long usedId) {
+        generatorFor(table).lastId.accumulateAndGet(usedId, Math::max);
+    }
+
+    private static SequentialIdGenerator generatorFor(String table) {
+        SequentialIdGenerator generator = GENERATORS.get(table);
+        if (generator == null) {
+            throw new IllegalStateException("No sequential id generator for table " + table);
+        }
+        return generator;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        if (object instanceof Preassigned preassigned && preassigned.getReservedId() != null) {
+            return preassigned.getReservedId();
+        }
+        initialize(() -> {
+            Object max = session.createNativeQuery("SELECT MAX(" + column + ") FROM " + table).getSingleResult();
+            return max == null ? 0L : ((Number) max).longValue();
+        });
+        return lastId.incrementAndGet();
+    }
+
+    private void initialize(LongSupplier currentMaxId) {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (!initialized) {
+                // Giữ giá trị lớn hơn nếu advancePast đã chạy trước
+                lastId.accumulateAndGet(currentMaxId.getAsLong(), Math::max);
+                initialized = true;
+            }
+        }
+    }
+}
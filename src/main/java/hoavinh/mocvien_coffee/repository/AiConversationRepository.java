@@ -0,0 +1,7 @@
+package hoavinh.mocvien_coffee.repository;
+
+import hoavinh.mocvien_coffee.model.AiConversation;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface AiConversationRepository extends JpaRepository<AiConversation, String> {
+}
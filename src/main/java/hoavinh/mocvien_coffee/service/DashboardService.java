@@ -7,6 +7,7 @@ import hoavinh.mocvien_coffee.repository.OrderItemRepository;
 import hoavinh.mocvien_coffee.repository.OrderRepository;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -19,7 +20,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+// Chỉ đọc: với profile sqlite chạy trên pool read-only, không chặn POS ghi order
 @Service
+@Transactional(readOnly = true)
 public class DashboardService {
 
     private final OrderRepository orderRepository;
@@ -0,0 +1,39 @@
+package hoavinh.mocvien_coffee.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version của menu - tăng mỗi khi product thay đổi (ProductService save/delete)
+ * Các cache dựa trên menu (câu trả lời AI, menu context...) so version để biết khi nào hết hạn
+ */
+@Service
+public class MenuVersionService {
+
+    private final AtomicLong version = new AtomicLong(1);
+
+    public long currentVersion() {
+        return version.get();
+    }
+
+    /**
+     * Đánh dấu menu đã thay đổi
+     * Nếu đang trong transaction thì chỉ tăng version sau khi commit,
+     * tránh trường hợp cache rebuild từ dữ liệu chưa commit rồi gắn version mới
+     */
+    public void markMenuChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    version.incrementAndGet();
+                }
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package hoavinh.mocvien_coffee.service;
+
+import hoavinh.mocvien_coffee.repository.OrderRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tra idempotency key của order POS -> orderId, để client gửi lại (mạng chập chờn) không tạo order trùng
+ * - LRU trong RAM (app.pos.idempotency.max-entries) cho các lần retry gần đây, không cần query
+ * - Không có trong RAM thì tra cột orders.idempotency_key (unique index), kết quả đưa lại vào RAM
+ * - Chỉ nhớ key đã có order (ghi DB xong hoặc đã nằm trong log hàng đợi), không cache kết quả "chưa có"
+ */
+@Component
+public class OrderIdempotencyIndex {
+
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private final OrderRepository orderRepository;
+    private final Map<String, Long> recent;
+
+    public OrderIdempotencyIndex(OrderRepository orderRepository,
+                                 @Value("${app.pos.idempotency.max-entries:10000}") int maxEntries) {
+        this.orderRepository = orderRepository;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Key đã trim, null nếu client không gửi
+     *
+     * @throws IllegalArgumentException nếu key dài quá MAX_KEY_LENGTH
+     */
+    public static String normalize(String key) {
+        if (key == null || key.isBlank()) {
+            return null;
+        }
+        String trimmed = key.trim();
+        if (trimmed.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key is longer than " + MAX_KEY_LENGTH + " characters");
+        }
+        return trimmed;
+    }
+
+    /**
+     * orderId đã tạo với key này, null nếu chưa có
+     */
+    public Long find(String key) {
+        if (key == null) {
+            return null;
+        }
+        synchronized (recent) {
+            Long orderId = recent.get(key);
+            if (orderId != null) {
+                return orderId;
+            }
+        }
+        Long orderId = orderRepository.findIdByIdempotencyKey(key).orElse(null);
+        if (orderId != null) {
+            remember(key, orderId);
+        }
+        return orderId;
+    }
+
+    public void remember(String key, long orderId) {
+        if (key == null) {
+            return;
+        }
+        synchronized (recent) {
+            recent.put(key, orderId);
+        }
+    }
+
+    /**
+     * Bỏ key của order không ghi được (order bị hủy khỏi hàng đợi), client gửi lại sẽ tạo order mới
+     */
+    public void forget(String key) {
+        if (key == null) {
+            return;
+        }
+        synchronized (recent) {
+            recent.remove(key);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package hoavinh.mocvien_coffee.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hoavinh.mocvien_coffee.dto.OrderRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Log append-only (JSON lines) của order nhận qua hàng đợi (OrderIntakeService)
+ * - ORDER: order đã nhận và đã ack cho thu ngân, DONE: order đã ghi xuống DB, FAILED: bỏ vì dữ liệu không còn hợp lệ
+ * - Mỗi lần ghi đều fsync, order đã ack không mất khi app crash / mất điện
+ * - HWM: id lớn nhất đã cấp qua log, luôn là dòng đầu sau mỗi lần viết lại file,
+ *   để order bị bỏ (không có trong DB) không làm id của nó bị cấp lại sau khi khởi động lại
+ * - Khởi động: đọc lại các order chưa DONE rồi viết lại file chỉ gồm HWM + các order đó (bỏ cả dòng ghi dở lúc crash)
+ * - Khi mọi order đã DONE thì viết lại file chỉ còn dòng HWM, log không phình mãi
+ * - Order bị bỏ được ghi đầy đủ vào file <log>.dropped để nhập lại bằng tay
+ */
+class OrderIntakeLog implements Closeable {
+
+    private static final String ORDER = "ORDER";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final String HWM = "HWM";
+
+    private final Path file;
+    private final Path droppedFile;
+    private final ObjectMapper objectMapper;
+    // Order đã ghi ORDER nhưng chưa có DONE/FAILED
+    private final Set<Long> outstanding = new HashSet<>();
+    private long highWaterMark;
+    private FileChannel channel;
+
+    OrderIntakeLog(Path file, ObjectMapper objectMapper) {
+        this.file = file;
+        this.droppedFile = file.resolveSibling(file.getFileName() + ".dropped");
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Id lớn nhất từng cấp qua log (kể cả order đã DONE / FAILED), 0 nếu chưa có
+     */
+    synchronized long highWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Các order chưa ghi xuống DB theo thứ tự nhận, gọi một lần lúc khởi động trước mọi append
+     */
+    synchronized List<OrderIntakeService.QueuedOrder> recover() throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        Map<Long, OrderIntakeService.QueuedOrder> pending = new LinkedHashMap<>();
+        int skipped = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            LogEntry entry;
+            try {
+                entry = objectMapper.readValue(line, LogEntry.class);
+            } catch (IOException e) {
+                skipped++;
+                continue;
+            }
+            if (entry.orderId() == null) {
+                skipped++;
+                continue;
+            }
+            highWaterMark = Math.max(highWaterMark, entry.orderId());
+            if (HWM.equals(entry.type())) {
+                continue;
+            }
+            if (ORDER.equals(entry.type())) {
+                pending.put(entry.orderId(), new OrderIntakeService.QueuedOrder(
+                        entry.orderId(), entry.username(), entry.createdAt(), entry.request()));
+            } else {
+                pending.remove(entry.orderId());
+            }
+        }
+        if (skipped > 0) {
+            System.err.println("⚠️ Skipped " + skipped + " unreadable line(s) in order intake log " + file);
+        }
+
+        StringBuilder lines = new StringBuilder(hwmLine());
+        for (OrderIntakeService.QueuedOrder order : pending.values()) {
+            lines.append(toLine(ORDER, order));
+        }
+        rewrite(lines.toString());
+
+        outstanding.addAll(pending.keySet());
+        return new ArrayList<>(pending.values());
+    }
+
+    synchronized void appendOrder(OrderIntakeService.QueuedOrder order) throws IOException {
+        write(toLine(ORDER, order));
+        outstanding.add(order.orderId());
+        highWaterMark = Math.max(highWaterMark, order.orderId());
+    }
+
+    synchronized void markDone(Collection<Long> orderIds) throws IOException {
+        mark(DONE, orderIds);
+    }
+
+    /**
+     * Ghi order vào file dropped trước rồi mới ghi FAILED: crash giữa hai bước thì order được replay và bỏ lại,
+     * không mất dấu (readDropped gộp các dòng trùng orderId)
+     */
+    synchronized void markFailed(OrderIntakeService.DroppedOrder dropped) throws IOException {
+        Path parent = droppedFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel out = FileChannel.open(droppedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap((objectMapper.writeValueAsString(dropped) + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        mark(FAILED, List.of(dropped.orderId()));
+    }
+
+    /**
+     * Các order đã bị bỏ, cũ trước mới sau
+     */
+    synchronized List<OrderIntakeService.DroppedOrder> readDropped() throws IOException {
+        if (!Files.exists(droppedFile)) {
+            return List.of();
+        }
+        Map<Long, OrderIntakeService.DroppedOrder> dropped = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(droppedFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                OrderIntakeService.DroppedOrder order = objectMapper.readValue(line,
+                        OrderIntakeService.DroppedOrder.class);
+                dropped.put(order.orderId(), order);
+            } catch (IOException e) {
+                // Dòng ghi dở lúc crash
+            }
+        }
+        return new ArrayList<>(dropped.values());
+    }
+
+    private void mark(String type, Collection<Long> orderIds) throws IOException {
+        outstanding.removeAll(orderIds);
+        if (outstanding.isEmpty()) {
+            // Không còn order chờ -> chỉ giữ lại HWM, không cần ghi marker
+            rewrite(hwmLine());
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Long orderId : orderIds) {
+            lines.append(objectMapper.writeValueAsString(new LogEntry(type, orderId, null, null, null))).append('\n');
+        }
+        write(lines.toString());
+    }
+
+    private String toLine(String type, OrderIntakeService.QueuedOrder order) throws IOException {
+        return objectMapper.writeValueAsString(new LogEntry(type, order.orderId(), order.username(),
+                order.createdAt(), order.request())) + "\n";
+    }
+
+    private String hwmLine() throws IOException {
+        if (highWaterMark == 0) {
+            return "";
+        }
+        return objectMapper.writeValueAsString(new LogEntry(HWM, highWaterMark, null, null, null)) + "\n";
+    }
+
+    /**
+     * Thay toàn bộ nội dung log (file tạm + fsync + move để không hỏng log nếu crash giữa chừng)
+     */
+    private void rewrite(String lines) throws IOException {
+        close();
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path compacted = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void write(String lines) throws IOException {
+        FileChannel out = openChannel();
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        out.force(false);
+    }
+
+    private FileChannel openChannel() throws IOException {
+        if (channel == null) {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record LogEntry(String type, Long orderId, String username, LocalDateTime createdAt,
+                    OrderRequest request) {
+    }
+}
@@ -0,0 +1,328 @@
+package hoavinh.mocvien_coffee.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import hoavinh.mocvien_coffee.dto.OrderRequest;
+import hoavinh.mocvien_coffee.model.Order;
+import hoavinh.mocvien_coffee.model.SequentialIdGenerator;
+import hoavinh.mocvien_coffee.model.User;
+import hoavinh.mocvien_coffee.repository.OrderRepository;
+import hoavinh.mocvien_coffee.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Nhận order của POS qua hàng đợi (app.pos.order-intake.mode=async)
+ * - Thu ngân: kiểm tra order, cấp id, ghi vào log trên đĩa (OrderIntakeLog, có fsync) rồi ack ngay,
+ *   không chờ SQLite đang bận (báo cáo, backup...)
+ * - Một thread nền ghi order xuống DB theo đúng thứ tự nhận, mỗi transaction tối đa app.pos.order-intake.batch-size order
+ * - Khởi động lại sau crash: order trong log chưa ghi được đưa lại vào hàng đợi, order đã có trong DB thì bỏ qua
+ * - mode=sync (mặc định) giữ cách cũ: ghi DB xong mới trả response; log còn order chờ vẫn được ghi nốt
+ * - Order có idempotency key đã gặp (OrderIdempotencyIndex) thì trả lại orderId cũ, không ghi gì thêm
+ * - Order bị bỏ (dữ liệu không còn hợp lệ) được lưu lại, xem qua getDroppedOrders() / GET /api/pos/orders/dropped
+ */
+@Service
+public class OrderIntakeService {
+
+    private static final String ORDERS_TABLE = "orders";
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30_000;
+    private static final int MAX_DROPPED_IN_MEMORY = 200;
+
+    /**
+     * Order đã nhận, chờ ghi xuống DB (id và thời điểm tạo đã cố định lúc nhận)
+     */
+    public record QueuedOrder(long orderId, String username, LocalDateTime createdAt, OrderRequest request) {
+    }
+
+    /**
+     * Order đã ack nhưng không ghi được xuống DB (product / bàn / user đã bị xóa...), cần nhập lại bằng tay
+     */
+    public record DroppedOrder(long orderId, String username, LocalDateTime createdAt, OrderRequest request,
+                               LocalDateTime droppedAt, String reason) {
+    }
+
+    /**
+     * Kết quả trả cho POS, status: CREATED (đã ghi DB), QUEUED (đã vào log) hoặc DUPLICATE (key đã dùng, createdAt null)
+     */
+    public record Receipt(long orderId, LocalDateTime createdAt, String status) {
+    }
+
+    private final OrderService orderService;
+    private final OrderRepository orderRepository;
+    private final UserRepository userRepository;
+    private final OrderIdempotencyIndex idempotencyIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderIntakeLog intakeLog;
+    private final boolean async;
+    private final int batchSize;
+    private final long retryBackoffMillis;
+    private final BlockingQueue<QueuedOrder> queue = new LinkedBlockingQueue<>();
+    // Các order bị bỏ gần nhất, bản đầy đủ nằm trong file <log>.dropped
+    private final Deque<DroppedOrder> droppedOrders = new ArrayDeque<>();
+    // Cấp id + ghi log + xếp hàng là một bước, thứ tự trong log trùng thứ tự id
+    private final Object intakeLock = new Object();
+    private volatile Thread writer;
+
+    public OrderIntakeService(OrderService orderService,
+                              OrderRepository orderRepository,
+                              UserRepository userRepository,
+                              OrderIdempotencyIndex idempotencyIndex,
+                              PlatformTransactionManager transactionManager,
+                              ObjectMapper objectMapper,
+                              @Value("${app.pos.order-intake.mode:sync}") String mode,
+                              @Value("${app.pos.order-intake.log-file:data/order-intake/orders.log}") String logFile,
+                              @Value("${app.pos.order-intake.batch-size:20}") int batchSize,
+                              @Value("${app.pos.order-intake.retry-backoff-ms:500}") long retryBackoffMillis) {
+        this.orderService = orderService;
+        this.orderRepository = orderRepository;
+        this.userRepository = userRepository;
+        this.idempotencyIndex = idempotencyIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.intakeLog = new OrderIntakeLog(Path.of(logFile), objectMapper);
+        this.async = "async".equalsIgnoreCase(mode);
+        this.batchSize = Math.max(1, batchSize);
+        this.retryBackoffMillis = Math.max(1, retryBackoffMillis);
+
+        // Đọc log trước khi nhận order mới: id đã cấp trong log không được cấp lại
+        List<QueuedOrder> pending;
+        List<DroppedOrder> dropped;
+        try {
+            pending = intakeLog.recover();
+            dropped = intakeLog.readDropped();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read order intake log " + logFile, e);
+        }
+        // HWM gồm cả order còn chờ lẫn order đã bị bỏ (không có trong DB, MAX(id) không thấy)
+        SequentialIdGenerator.advancePast(ORDERS_TABLE, intakeLog.highWaterMark());
+        dropped.subList(Math.max(0, dropped.size() - MAX_DROPPED_IN_MEMORY), dropped.size())
+                .forEach(droppedOrders::addLast);
+        for (QueuedOrder order : pending) {
+            idempotencyIndex.remember(keyOf(order), order.orderId());
+        }
+        queue.addAll(pending);
+        if (!pending.isEmpty()) {
+            System.out.println("🧾 Replaying " + pending.size() + " queued order(s) from " + logFile);
+        }
+    }
+
+    /**
+     * Điểm vào của POS: key đã dùng thì trả order cũ, còn lại ghi ngay (sync) hoặc đưa vào hàng đợi (async)
+     *
+     * @throws IllegalArgumentException nếu order không hợp lệ (không có món, product / bàn không tồn tại)
+     */
+    public Receipt place(OrderRequest request, User user) {
+        String key = OrderIdempotencyIndex.normalize(request.idempotencyKey());
+        Long existing = idempotencyIndex.find(key);
+        if (existing != null) {
+            return new Receipt(existing, null, "DUPLICATE");
+        }
+        if (async) {
+            return submit(request, user, key);
+        }
+        Order order;
+        try {
+            order = orderService.createOrder(request, user);
+        } catch (DataIntegrityViolationException e) {
+            // Hai lần gửi cùng key chạy song song, lần sau vướng unique index
+            Long original = idempotencyIndex.find(key);
+            if (original == null) {
+                throw e;
+            }
+            return new Receipt(original, null, "DUPLICATE");
+        }
+        idempotencyIndex.remember(key, order.getId());
+        return new Receipt(order.getId(), order.getCreatedAt(), "CREATED");
+    }
+
+    /**
+     * Nhận order, trả về ngay khi order đã nằm trong log (chưa ghi DB)
+     */
+    private Receipt submit(OrderRequest request, User user, String key) {
+        orderService.validate(request);
+        synchronized (intakeLock) {
+            // Lần gửi trùng key có thể vừa vào log trong lúc validate
+            Long existing = idempotencyIndex.find(key);
+            if (existing != null) {
+                return new Receipt(existing, null, "DUPLICATE");
+            }
+            long orderId = SequentialIdGenerator.reserve(ORDERS_TABLE, orderRepository::findMaxId);
+            QueuedOrder order = new QueuedOrder(orderId, user != null ? user.getUsername() : null,
+                    LocalDateTime.now(), request);
+            try {
+                intakeLog.appendOrder(order);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write order intake log", e);
+            }
+            idempotencyIndex.remember(key, orderId);
+            queue.add(order);
+            return new Receipt(orderId, order.createdAt(), "QUEUED");
+        }
+    }
+
+    /**
+     * Số order đã ack nhưng chưa ghi xuống DB
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Các order bị bỏ gần nhất (tối đa MAX_DROPPED_IN_MEMORY), mới nhất trước
+     */
+    public List<DroppedOrder> getDroppedOrders() {
+        synchronized (droppedOrders) {
+            List<DroppedOrder> result = new ArrayList<>(droppedOrders);
+            Collections.reverse(result);
+            return result;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWriter() {
+        Thread thread = new Thread(this::runWriter, "order-intake-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    private void runWriter() {
+        List<QueuedOrder> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // Order chưa ghi vẫn còn trong log, lần khởi động sau ghi tiếp
+                Thread.currentThread().interrupt();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<QueuedOrder> batch) throws InterruptedException {
+        if (batch.size() > 1) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writeOrders(batch));
+                markDone(batch);
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ Batch of " + batch.size() + " queued orders failed, writing one by one: "
+                        + e.getMessage());
+            }
+        }
+        for (QueuedOrder order : batch) {
+            writeWithRetry(order);
+        }
+    }
+
+    /**
+     * Ghi một order, lỗi tạm thời (DB bận) thì thử lại mãi để giữ đúng thứ tự,
+     * lỗi dữ liệu (product / bàn / user đã bị xóa, key đã có order) thì bỏ order và log đầy đủ để xử lý tay
+     */
+    private void writeWithRetry(QueuedOrder order) throws InterruptedException {
+        List<QueuedOrder> single = List.of(order);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writeOrders(single));
+                markDone(single);
+                return;
+            } catch (IllegalArgumentException | IllegalStateException | DataIntegrityViolationException e) {
+                System.err.println("❌ Dropping queued order #" + order.orderId() + " (" + e.getMessage() + "): "
+                        + order);
+                idempotencyIndex.forget(keyOf(order));
+                drop(new DroppedOrder(order.orderId(), order.username(), order.createdAt(), order.request(),
+                        LocalDateTime.now(), e.getMessage()));
+                return;
+            } catch (RuntimeException e) {
+                long backoff = Math.min(MAX_RETRY_BACKOFF_MILLIS, retryBackoffMillis << Math.min(attempt, 16));
+                System.err.printf("⚠️ Queued order #%d failed (attempt %d), retrying in %d ms: %s%n",
+                        order.orderId(), attempt + 1, backoff, e.getMessage());
+                Thread.sleep(backoff);
+            }
+        }
+    }
+
+    private void drop(DroppedOrder dropped) {
+        synchronized (droppedOrders) {
+            droppedOrders.addLast(dropped);
+            if (droppedOrders.size() > MAX_DROPPED_IN_MEMORY) {
+                droppedOrders.removeFirst();
+            }
+        }
+        try {
+            intakeLog.markFailed(dropped);
+        } catch (IOException io) {
+            System.err.println("⚠️ Cannot update order intake log: " + io.getMessage());
+        }
+    }
+
+    private void writeOrders(List<QueuedOrder> orders) {
+        List<Long> ids = orders.stream().map(QueuedOrder::orderId).toList();
+        // Order đã commit trước khi crash (chưa kịp ghi DONE) thì không ghi lại
+        Set<Long> existing = new HashSet<>(orderRepository.findExistingIds(ids));
+        Map<String, User> users = new HashMap<>();
+        for (QueuedOrder order : orders) {
+            if (existing.contains(order.orderId())) {
+                continue;
+            }
+            User user = order.username() == null ? null : users.computeIfAbsent(order.username(),
+                    username -> userRepository.findByUsername(username)
+                            .orElseThrow(() -> new IllegalArgumentException("User not found: " + username)));
+            orderService.createQueuedOrder(order.request(), user, order.orderId(), order.createdAt());
+        }
+    }
+
+    private static String keyOf(QueuedOrder order) {
+        return OrderIdempotencyIndex.normalize(order.request().idempotencyKey());
+    }
+
+    private void markDone(List<QueuedOrder> orders) {
+        try {
+            intakeLog.markDone(orders.stream().map(QueuedOrder::orderId).toList());
+        } catch (IOException e) {
+            // Order đã nằm trong DB, replay sẽ bỏ qua
+            System.err.println("⚠️ Cannot update order intake log: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread thread = writer;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            intakeLog.close();
+        } catch (IOException e) {
+            System.err.println("⚠️ Cannot close order intake log: " + e.getMessage());
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package hoavinh.mocvien_coffee.service;
 
+import hoavinh.mocvien_coffee.dto.OrderItemRequest;
 import hoavinh.mocvien_coffee.dto.OrderRequest;
 import hoavinh.mocvien_coffee.model.CafeTable;
 import hoavinh.mocvien_coffee.model.Order;
@@ -13,6 +14,11 @@ import jakarta.transaction.Transactional;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 public class OrderService {
@@ -31,9 +37,32 @@ public class OrderService {
 
     @Transactional
     public Order createOrder(OrderRequest request, User user) {
-        if (request.items() == null || request.items().isEmpty()) {
-            throw new IllegalArgumentException("Order must contain items");
+        return saveAndReleaseTable(buildOrder(request, user, LocalDateTime.now()));
+    }
+
+    /**
+     * Ghi order đã nhận qua hàng đợi (OrderIntakeService) với id và thời điểm đã cấp lúc nhận
+     */
+    @Transactional
+    public Order createQueuedOrder(OrderRequest request, User user, long orderId, LocalDateTime createdAt) {
+        Order order = buildOrder(request, user, createdAt);
+        order.setReservedId(orderId);
+        return saveAndReleaseTable(order);
+    }
+
+    /**
+     * Kiểm tra order trước khi nhận vào hàng đợi (có món, product và bàn tồn tại), không ghi gì
+     */
+    public void validate(OrderRequest request) {
+        requireItems(request);
+        loadProducts(request.items());
+        if (request.tableId() != null) {
+            tableService.getById(request.tableId());
         }
+    }
+
+    private Order buildOrder(OrderRequest request, User user, LocalDateTime createdAt) {
+        requireItems(request);
 
         CafeTable table = null;
         String tableNumber = (request.tableNumber() == null || request.tableNumber().isBlank())
@@ -46,16 +75,18 @@ public class OrderService {
 
         var order = Order.builder()
                 .tableNumber(tableNumber)
-                .createdAt(LocalDateTime.now())
+                .createdAt(createdAt)
+                .idempotencyKey(OrderIdempotencyIndex.normalize(request.idempotencyKey()))
                 .status(OrderStatus.COMPLETED)
                 .createdBy(user)
                 .build();
         order.setTableRef(table);
 
+        Map<Long, Product> products = loadProducts(request.items());
+
         double derivedTotal = 0;
         for (var item : request.items()) {
-            Product product = productRepository.findById(item.productId())
-                    .orElseThrow(() -> new IllegalArgumentException("Product not found"));
+            Product product = products.get(item.productId());
             double unitPrice = item.price() != null ? item.price() : product.getPrice();
             derivedTotal += unitPrice * item.quantity();
             var orderItem = OrderItem.builder()
@@ -80,12 +111,46 @@ public class OrderService {
         order.setCustomerCash(request.customerCash());
         order.setChangeAmount(request.changeAmount());
         order.setTotalAmount(total);
+        return order;
+    }
 
+    private Order saveAndReleaseTable(Order order) {
         Order saved = orderRepository.save(order);
-        if (table != null) {
-            tableService.release(table.getId());
+        if (order.getTableRef() != null) {
+            tableService.release(order.getTableRef().getId());
         }
         return saved;
     }
+
+    private static void requireItems(OrderRequest request) {
+        if (request.items() == null || request.items().isEmpty()) {
+            throw new IllegalArgumentException("Order must contain items");
+        }
+    }
+
+    /**
+     * Lấy mọi product của order trong một query (thay vì findById từng dòng)
+     *
+     * @throws IllegalArgumentException liệt kê đúng các productId không tồn tại
+     */
+    private Map<Long, Product> loadProducts(List<OrderItemRequest> items) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (var item : items) {
+            if (item.productId() == null) {
+                throw new IllegalArgumentException("Product id is required");
+            }
+            ids.add(item.productId());
+        }
+
+        Map<Long, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(ids)) {
+            products.put(product.getId(), product);
+        }
+        if (products.size() < ids.size()) {
+            List<Long> missing = ids.stream().filter(id -> !products.containsKey(id)).toList();
+            throw new IllegalArgumentException("Product not found: " + missing);
+        }
+        return products;
+    }
 }
 
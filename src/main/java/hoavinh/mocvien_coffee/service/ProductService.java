@@ -5,6 +5,8 @@ import hoavinh.mocvien_coffee.model.Product;
 import hoavinh.mocvien_coffee.repository.ProductRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Locale;
@@ -15,11 +17,14 @@ public class ProductService {
 
     private final ProductRepository productRepository;
     private final QdrantMenuService qdrantMenuService;
+    private final MenuVersionService menuVersionService;
 
     public ProductService(ProductRepository productRepository,
-                         QdrantMenuService qdrantMenuService) {
+                         QdrantMenuService qdrantMenuService,
+                         MenuVersionService menuVersionService) {
         this.productRepository = productRepository;
         this.qdrantMenuService = qdrantMenuService;
+        this.menuVersionService = menuVersionService;
     }
 
     public List<Product> getAvailableProducts(String category) {
@@ -47,14 +52,17 @@ public class ProductService {
     @Transactional
     public Product save(Product product) {
         Product saved = productRepository.save(product);
-        // Sync to Qdrant
-        if (saved.isAvailable()) {
-            // Chỉ sync product này, không sync lại toàn bộ
-            qdrantMenuService.syncProductToQdrant(saved);
-        } else {
-            // Nếu unavailable, xóa khỏi Qdrant (chỉ xóa product này)
-            qdrantMenuService.removeProductFromQdrant(saved.getId());
-        }
+        menuVersionService.markMenuChanged();
+        // Sync to Qdrant sau khi commit: embed / upsert không giữ connection ghi của SQLite
+        afterCommit(() -> {
+            if (saved.isAvailable()) {
+                // Chỉ sync product này, không sync lại toàn bộ
+                qdrantMenuService.syncProductToQdrant(saved);
+            } else {
+                // Nếu unavailable, xóa khỏi Qdrant (chỉ xóa product này)
+                qdrantMenuService.removeProductFromQdrant(saved.getId());
+            }
+        });
         return saved;
     }
 
@@ -62,8 +70,37 @@ public class ProductService {
     public void delete(Long id) {
         // Xóa khỏi DB trước
         productRepository.deleteById(id);
+        menuVersionService.markMenuChanged();
         // Chỉ xóa product cụ thể khỏi Qdrant, không sync lại toàn bộ
-        qdrantMenuService.removeProductFromQdrant(id);
+        afterCommit(() -> qdrantMenuService.removeProductFromQdrant(id));
+    }
+
+    @Transactional
+    public void deleteAll(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        productRepository.deleteAllById(ids);
+        menuVersionService.markMenuChanged();
+        // Xóa tất cả khỏi Qdrant trong một request, không block request thread
+        List<Long> removedIds = List.copyOf(ids);
+        afterCommit(() -> qdrantMenuService.removeProductsFromQdrant(removedIds));
+    }
+
+    /**
+     * Chạy sau khi transaction commit (rollback thì bỏ), ngay lập tức nếu không có transaction
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
     }
 
     public Product getById(Long id) {
@@ -8,10 +8,14 @@
         surchargeName: document.body.dataset.surchargeName || 'Phụ thu',
         surchargePercent: Number(document.body.dataset.surchargePercent || 0),
         cashGiven: 0,
-        checkoutMode: false
+        checkoutMode: false,
+        // Lần thanh toán chưa được server xác nhận: gửi lại đúng đơn này thì dùng lại key cũ
+        pendingCheckout: null
     };
 
     const CART_STORAGE_PREFIX = 'pos_cart_';
+    const ORDER_SUBMIT_ATTEMPTS = 4;
+    const ORDER_RETRY_BASE_MS = 300;
 
     const productGrid = document.getElementById('productGrid');
     const productSearch = document.getElementById('productSearch');
@@ -308,19 +312,54 @@
                 note: item.note
             }))
         };
+        payload.idempotencyKey = checkoutKeyFor(payload);
         return {totals, payload};
     }
 
+    function checkoutKeyFor(payload) {
+        const signature = JSON.stringify(payload);
+        if (state.pendingCheckout?.signature !== signature) {
+            state.pendingCheckout = {signature, key: newIdempotencyKey()};
+        }
+        return state.pendingCheckout.key;
+    }
+
+    function newIdempotencyKey() {
+        if (window.crypto?.randomUUID) {
+            return crypto.randomUUID();
+        }
+        // randomUUID chỉ có trên HTTPS/localhost, máy POS trong LAN dùng getRandomValues
+        const bytes = crypto.getRandomValues(new Uint8Array(16));
+        return Array.from(bytes, b => b.toString(16).padStart(2, '0')).join('');
+    }
+
+    // Wi-Fi chập chờn: gửi lại cùng idempotencyKey, server trả order cũ thay vì tạo order trùng
+    async function submitOrder(payload) {
+        for (let attempt = 1; ; attempt++) {
+            try {
+                const response = await fetch('/api/pos/orders', {
+                    method: 'POST',
+                    headers: {'Content-Type': 'application/json'},
+                    body: JSON.stringify(payload)
+                });
+                const retryable = response.status >= 500 || response.status === 408 || response.status === 429;
+                if (response.ok || !retryable || attempt >= ORDER_SUBMIT_ATTEMPTS) {
+                    return response;
+                }
+            } catch (e) {
+                if (attempt >= ORDER_SUBMIT_ATTEMPTS) throw e;
+            }
+            await new Promise(resolve => setTimeout(resolve, ORDER_RETRY_BASE_MS * 2 ** (attempt - 1)));
+        }
+    }
+
     async function finalizeCheckout(preparedPayload) {
         const payload = preparedPayload ?? prepareCheckout()?.payload;
         if (!payload) return;
         try {
-            const response = await fetch('/api/pos/orders', {
-                method: 'POST',
-                headers: {'Content-Type': 'application/json'},
-                body: JSON.stringify(payload)
-            });
+            const response = await submitOrder(payload);
             if (!response.ok) throw new Error('Failed to submit order');
+            state.pendingCheckout = null;
             clearCartStorage(currentCartKey());
             await releaseCurrentTable();
             state.cart = [];
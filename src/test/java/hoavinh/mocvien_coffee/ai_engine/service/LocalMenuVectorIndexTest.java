@@ -0,0 +1,80 @@
+package hoavinh.mocvien_coffee.ai_engine.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Filter trên local index cho cùng kết quả như filter của Qdrant (mọi toán tử của filter DSL)
+ */
+class LocalMenuVectorIndexTest {
+
+    // Mọi document cùng một vector, chỉ filter quyết định kết quả
+    private static final EmbeddingModel CONSTANT_MODEL = new EmbeddingModel() {
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (int i = 0; i < request.getInstructions().size(); i++) {
+                embeddings.add(new Embedding(new float[]{1f, 0f}, i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return new float[]{1f, 0f};
+        }
+    };
+
+    private final LocalMenuVectorIndex index = new LocalMenuVectorIndex(CONSTANT_MODEL);
+
+    LocalMenuVectorIndexTest() {
+        index.add(List.of(
+                new Document("a", "Cà phê sữa", Map.of("productId", "1", "price", 25000.0, "category", "Coffee")),
+                new Document("b", "Trà đào", Map.of("productId", "2", "price", 35000.0, "category", "Tea")),
+                new Document("c", "Bánh mì", Map.of("productId", "3", "price", 15000.0, "category", "Bakery"))));
+    }
+
+    @Test
+    void numericComparisons() {
+        assertEquals(List.of("a", "b"), search("price > 20000"));
+        assertEquals(List.of("b"), search("price >= 35000"));
+        assertEquals(List.of("c"), search("price < 25000"));
+        assertEquals(List.of("a", "c"), search("price <= 25000"));
+        // productId lưu dạng chuỗi số vẫn so theo số
+        assertEquals(List.of("b", "c"), search("productId > 1"));
+    }
+
+    @Test
+    void stringComparisonsAndCombinations() {
+        assertEquals(List.of("a", "b"), search("category >= 'Coffee'"));
+        assertEquals(List.of("c"), search("category < 'Coffee'"));
+        assertEquals(List.of("b"), search("price > 20000 && category == 'Tea'"));
+        assertEquals(List.of("a", "c"), search("NOT (price > 30000)"));
+        assertEquals(List.of("a", "c"), search("category in ['Coffee', 'Bakery']"));
+    }
+
+    @Test
+    void missingKeyNeverCompares() {
+        assertEquals(List.of(), search("stock > 1"));
+        assertEquals(List.of(), search("stock <= 1"));
+    }
+
+    private List<String> search(String filter) {
+        return index.similaritySearch(SearchRequest.builder().query("menu").topK(10).filterExpression(filter).build())
+                .stream()
+                .map(Document::getId)
+                .sorted()
+                .toList();
+    }
+}
@@ -0,0 +1,141 @@
+package hoavinh.mocvien_coffee.ai_engine.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * So EditDistance với Levenshtein DP đầy đủ trên chuỗi ngẫu nhiên (seed cố định)
+ * Phủ cả nhánh Myers (chuỗi ngắn <= 64) và nhánh DP theo dải (> 64), ký tự ASCII lẫn tiếng Việt có dấu
+ */
+class EditDistanceTest {
+
+    private static final String ASCII = "abcde ";
+    private static final String VIETNAMESE = "aăâeêoôơuưđàáạảãầấậẩẫằắặẳẵ";
+    private static final int ROUNDS = 3000;
+
+    @Test
+    void boundedDistanceMatchesReferenceOnShortStrings() {
+        checkBoundedDistance(new Random(14), 0, 64, ASCII);
+        checkBoundedDistance(new Random(15), 0, 64, VIETNAMESE);
+    }
+
+    @Test
+    void boundedDistanceMatchesReferenceOnLongStrings() {
+        checkBoundedDistance(new Random(16), 65, 160, ASCII);
+        checkBoundedDistance(new Random(17), 65, 160, VIETNAMESE);
+    }
+
+    @Test
+    void boundedDistanceMatchesReferenceAcrossPathBoundary() {
+        // Một chuỗi <= 64, chuỗi kia dài hơn: nhánh chọn theo chuỗi ngắn
+        checkBoundedDistance(new Random(18), 50, 80, ASCII + VIETNAMESE);
+    }
+
+    @Test
+    void distanceMatchesReference() {
+        Random random = new Random(19);
+        for (int round = 0; round < ROUNDS; round++) {
+            String a = randomString(random, 0, 100, ASCII + VIETNAMESE);
+            String b = mutate(random, a, ASCII + VIETNAMESE);
+            assertEquals(reference(a, b), EditDistance.distance(a, b), a + " / " + b);
+        }
+    }
+
+    @Test
+    void isSimilarMatchesReference() {
+        Random random = new Random(20);
+        double[] thresholds = {0.0, 0.5, 0.7, 0.8, 0.95};
+        for (int round = 0; round < ROUNDS; round++) {
+            String a = randomString(random, 0, 90, ASCII + VIETNAMESE);
+            String b = mutate(random, a, ASCII + VIETNAMESE);
+            int maxLength = Math.max(a.length(), b.length());
+            int distance = reference(a, b);
+            for (double threshold : thresholds) {
+                boolean expected = maxLength == 0
+                        ? 1.0 > threshold
+                        : 1.0 - (double) distance / maxLength > threshold;
+                assertEquals(expected, EditDistance.isSimilar(a, b, threshold),
+                        a + " / " + b + " @ " + threshold);
+            }
+        }
+    }
+
+    @Test
+    void emptyAndIdenticalStrings() {
+        assertEquals(0, EditDistance.boundedDistance("", "", 0));
+        assertEquals(3, EditDistance.boundedDistance("", "abc", 3));
+        assertEquals(3, EditDistance.boundedDistance("", "abc", 2));
+        assertEquals(0, EditDistance.boundedDistance("cà phê", "cà phê", 0));
+    }
+
+    @Test
+    void negativeMaxDistanceIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> EditDistance.boundedDistance("a", "a", -1));
+        assertThrows(IllegalArgumentException.class, () -> EditDistance.boundedDistance("abc", "xyz", -5));
+    }
+
+    private static void checkBoundedDistance(Random random, int minLength, int maxLength, String alphabet) {
+        for (int round = 0; round < ROUNDS; round++) {
+            String a = randomString(random, minLength, maxLength, alphabet);
+            String b = random.nextBoolean()
+                    ? mutate(random, a, alphabet)
+                    : randomString(random, minLength, maxLength, alphabet);
+            int expected = reference(a, b);
+            int maxDistance = random.nextInt(Math.max(a.length(), b.length()) + 2);
+            int bounded = expected <= maxDistance ? expected : maxDistance + 1;
+            assertEquals(bounded, EditDistance.boundedDistance(a, b, maxDistance),
+                    a + " / " + b + " (max " + maxDistance + ")");
+            assertEquals(bounded, EditDistance.boundedDistance(b, a, maxDistance),
+                    b + " / " + a + " (max " + maxDistance + ")");
+        }
+    }
+
+    private static String randomString(Random random, int minLength, int maxLength, String alphabet) {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        StringBuilder out = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            out.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return out.toString();
+    }
+
+    // Vài phép sửa ngẫu nhiên để có cả cặp gần nhau (khoảng cách nhỏ) chứ không chỉ cặp khác hẳn
+    private static String mutate(Random random, String text, String alphabet) {
+        StringBuilder out = new StringBuilder(text);
+        int edits = random.nextInt(Math.max(1, text.length() / 4) + 1);
+        for (int e = 0; e < edits; e++) {
+            int op = random.nextInt(3);
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            if (op == 0 || out.length() == 0) {
+                out.insert(random.nextInt(out.length() + 1), c);
+            } else if (op == 1) {
+                out.deleteCharAt(random.nextInt(out.length()));
+            } else {
+                out.setCharAt(random.nextInt(out.length()), c);
+            }
+        }
+        return out.toString();
+    }
+
+    // Levenshtein DP đầy đủ, không ngưỡng
+    private static int reference(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
@@ -0,0 +1,107 @@
+package hoavinh.mocvien_coffee.ai_engine.text;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * So VietnameseNormalizer với chuỗi replaceAll cũ (trước khi dùng bảng tra) để chắc kết quả không đổi
+ */
+class VietnameseNormalizerTest {
+
+    static final List<String> MENU_NAMES = List.of(
+            "Cà Phê Sữa Đá",
+            "Cà phê đen nóng",
+            "Bạc Xỉu",
+            "Trà Đào Cam Sả",
+            "Trà Ô Long Sữa",
+            "Sinh Tố Bơ",
+            "Nước Ép Dưa Hấu",
+            "Sữa Chua Việt Quất",
+            "Cappuccino Đặc Biệt",
+            "Matcha Đá Xay",
+            "ESPRESSO",
+            "Yaourt Dâu Tây",
+            "Bánh Mì Ốp La",
+            "Kem Dừa Sầu Riêng",
+            "Chè Khúc Bạch",
+            "Nước Suối",
+            "Trà Tắc Mật Ong",
+            "Hướng Dương",
+            "  Cà   phê\tsữa  ",
+            "\nBạc xỉu ít đường\r\n",
+            "ĐÁ XAY SÔ-CÔ-LA",
+            "Americano (L)",
+            "Trà sữa trân châu 🧋",
+            "",
+            "   ");
+
+    @Test
+    void foldMatchesOldChainOnMenuNames() {
+        for (String name : MENU_NAMES) {
+            assertEquals(oldFold(name), VietnameseNormalizer.fold(name), name);
+        }
+    }
+
+    @Test
+    void foldCompactMatchesOldChainOnMenuNames() {
+        for (String name : MENU_NAMES) {
+            assertEquals(oldFoldCompact(name), VietnameseNormalizer.foldCompact(name), name);
+        }
+    }
+
+    @Test
+    void decomposedInputFoldsLikePrecomposed() {
+        for (String name : MENU_NAMES) {
+            String nfd = Normalizer.normalize(name, Normalizer.Form.NFD);
+            assertEquals(oldFold(name), VietnameseNormalizer.fold(nfd), name);
+            assertEquals(oldFoldCompact(name), VietnameseNormalizer.foldCompact(nfd), name);
+        }
+    }
+
+    @Test
+    void foldIntoReusesBuffer() {
+        StringBuilder buffer = new StringBuilder("nội dung cũ dài hơn kết quả");
+        for (String name : MENU_NAMES) {
+            VietnameseNormalizer.foldInto(name, buffer, false);
+            assertEquals(oldFold(name), buffer.toString(), name);
+            VietnameseNormalizer.foldInto(name, buffer, true);
+            assertEquals(oldFoldCompact(name), buffer.toString(), name);
+        }
+    }
+
+    @Test
+    void nullFoldsToEmpty() {
+        assertEquals("", VietnameseNormalizer.fold(null));
+        assertEquals("", VietnameseNormalizer.foldCompact(null));
+    }
+
+    // Chuỗi replaceAll cũ của ProductMatchingService / OrderExtractionHelper
+    static String oldFold(String text) {
+        return text.toLowerCase()
+                .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
+                .replaceAll("[èéẹẻẽêềếệểễ]", "e")
+                .replaceAll("[ìíịỉĩ]", "i")
+                .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
+                .replaceAll("[ùúụủũưừứựửữ]", "u")
+                .replaceAll("[ỳýỵỷỹ]", "y")
+                .replaceAll("[đ]", "d")
+                .trim();
+    }
+
+    static String oldFoldCompact(String text) {
+        return text.toLowerCase()
+                .replaceAll("[àáạảãâầấậẩẫăằắặẳẵ]", "a")
+                .replaceAll("[èéẹẻẽêềếệểễ]", "e")
+                .replaceAll("[ìíịỉĩ]", "i")
+                .replaceAll("[òóọỏõôồốộổỗơờớợởỡ]", "o")
+                .replaceAll("[ùúụủũưừứựửữ]", "u")
+                .replaceAll("[ỳýỵỷỹ]", "y")
+                .replaceAll("[đ]", "d")
+                .replaceAll("\\s+", "")
+                .trim();
+    }
+}
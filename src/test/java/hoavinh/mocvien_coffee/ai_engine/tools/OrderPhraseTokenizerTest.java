@@ -0,0 +1,87 @@
+package hoavinh.mocvien_coffee.ai_engine.tools;
+
+import hoavinh.mocvien_coffee.ai_engine.tools.OrderPhraseTokenizer.Segment;
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class OrderPhraseTokenizerTest {
+
+    @Test
+    void splitsQuantityProductAndNote() {
+        assertEquals(List.of(
+                        new Segment(2, "cà phê sữa", "ít đá", true),
+                        new Segment(1, "bánh mì", null, true),
+                        new Segment(2, "trà đào", null, true)),
+                OrderPhraseTokenizer.tokenize("cho em hai ly cà phê sữa ít đá, 1 bánh mì và trà đào x2"));
+    }
+
+    @Test
+    void numberWordsBeforeUnitOrProduct() {
+        assertEquals(List.of(new Segment(8, "trà đào", null, true)),
+                OrderPhraseTokenizer.tokenize("cho em tám ly trà đào"));
+        assertEquals(List.of(new Segment(5, "trà sữa", null, true)),
+                OrderPhraseTokenizer.tokenize("năm trà sữa nhé"));
+        assertEquals(List.of(new Segment(4, "cà phê", null, true)),
+                OrderPhraseTokenizer.tokenize("tư ly cà phê"));
+        assertEquals(List.of(new Segment(25, "bạc xỉu", null, true)),
+                OrderPhraseTokenizer.tokenize("hai mươi lăm ly bạc xỉu"));
+        assertEquals(List.of(new Segment(15, "trà tắc", null, true)),
+                OrderPhraseTokenizer.tokenize("mười lăm trà tắc"));
+    }
+
+    @Test
+    void sauRiengIsNotSix() {
+        assertEquals(List.of(new Segment(1, "sầu riêng", null, false)),
+                OrderPhraseTokenizer.tokenize("cho em sầu riêng"));
+        assertEquals(List.of(new Segment(1, "sinh tố sầu riêng", null, false)),
+                OrderPhraseTokenizer.tokenize("cho em sinh tố sầu riêng"));
+        assertEquals(List.of(new Segment(2, "kem sầu riêng", null, true)),
+                OrderPhraseTokenizer.tokenize("2 kem sầu riêng"));
+    }
+
+    @Test
+    void unaccentedNumberWordsNeedUnit() {
+        assertEquals(List.of(new Segment(1, "sau rieng", null, false)),
+                OrderPhraseTokenizer.tokenize("cho em sau rieng"));
+        assertEquals(List.of(new Segment(6, "tra dao", null, true)),
+                OrderPhraseTokenizer.tokenize("sau ly tra dao"));
+        assertEquals(List.of(new Segment(2, "ca phe", null, true)),
+                OrderPhraseTokenizer.tokenize("cho em hai ca phe"));
+    }
+
+    @Test
+    void wordsThatFoldLikeNumbersAreNotQuantities() {
+        assertEquals(List.of(new Segment(2, "trà", null, true)),
+                OrderPhraseTokenizer.tokenize("cho bà hai ly trà"));
+        // "từ" fold thành "tu" (= "tư"), "năm" / "tám" cuối đoạn không có món theo sau
+        for (String message : List.of("2 ly trà, từ từ cũng được", "cho em năm", "trà đào, tám")) {
+            for (Segment segment : OrderPhraseTokenizer.tokenize(message)) {
+                assertFalse(segment.quantity() == 4 || segment.quantity() == 5 || segment.quantity() == 8,
+                        message + " -> " + segment);
+            }
+        }
+    }
+
+    @Test
+    void oLongIsPartOfProductName() {
+        assertEquals(List.of(new Segment(2, "ô long", null, true)),
+                OrderPhraseTokenizer.tokenize("cho em 2 ô long"));
+        assertEquals(List.of(new Segment(1, "trà ô long sữa", null, true)),
+                OrderPhraseTokenizer.tokenize("1 ly trà ô long sữa"));
+    }
+
+    @Test
+    void decomposedInputMatchesPrecomposed() {
+        String message = "cho em tám ly trà đào, sầu riêng";
+        assertEquals(OrderPhraseTokenizer.tokenize(message),
+                OrderPhraseTokenizer.tokenize(Normalizer.normalize(message, Normalizer.Form.NFD)).stream()
+                        .map(s -> new Segment(s.quantity(), Normalizer.normalize(s.productPhrase(), Normalizer.Form.NFC),
+                                s.note(), s.explicitQuantity()))
+                        .toList());
+    }
+}
@@ -0,0 +1,104 @@
+package hoavinh.mocvien_coffee.repository;
+
+import hoavinh.mocvien_coffee.model.Order;
+import hoavinh.mocvien_coffee.model.OrderItem;
+import hoavinh.mocvien_coffee.model.OrderStatus;
+import hoavinh.mocvien_coffee.model.Product;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * INSERT order + order item trên SQLite thật (dialect của app) có được gom batch không
+ * Đếm PreparedStatement qua Hibernate statistics: batch thì mỗi order chỉ 2 statement (orders, order_items),
+ * không batch thì 1 + số món
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:sqlite:file:order-batching-test?mode=memory&cache=shared",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class OrderInsertBatchingTest {
+
+    private static final int ORDERS = 200;
+    private static final int ITEMS_PER_ORDER = 15;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void orderAndItemsAreInsertedInBatches() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < ITEMS_PER_ORDER; i++) {
+            products.add(entityManager.persist(Product.builder()
+                    .name("Món " + i)
+                    .price(20_000.0 + i * 1_000)
+                    .category("Test")
+                    .build()));
+        }
+        entityManager.flush();
+
+        // Order đầu tiên khởi tạo bộ đếm id (SELECT MAX(id)), không tính vào kết quả
+        saveOrder(products);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        long started = System.nanoTime();
+        for (int i = 0; i < ORDERS; i++) {
+            saveOrder(products);
+        }
+        long elapsedNanos = System.nanoTime() - started;
+
+        double statementsPerOrder = (double) statistics.getPrepareStatementCount() / ORDERS;
+        System.out.printf("📊 %d orders x %d items: %.2f statements/order, %.3f ms/order%n",
+                ORDERS, ITEMS_PER_ORDER, statementsPerOrder, elapsedNanos / 1_000_000.0 / ORDERS);
+
+        assertEquals((long) ORDERS * (1 + ITEMS_PER_ORDER), statistics.getEntityInsertCount());
+        assertTrue(statementsPerOrder <= 2.0,
+                "Expected batched inserts (<= 2 statements per order) but got " + statementsPerOrder);
+    }
+
+    /**
+     * Một order như OrderService.createOrder: save, flush (commit), clear persistence context
+     */
+    private void saveOrder(List<Product> products) {
+        Order order = Order.builder()
+                .tableNumber("Takeout")
+                .createdAt(LocalDateTime.now())
+                .status(OrderStatus.COMPLETED)
+                .build();
+        double total = 0;
+        for (Product product : products) {
+            order.getItems().add(OrderItem.builder()
+                    .order(order)
+                    .product(product)
+                    .quantity(1)
+                    .price(product.getPrice())
+                    .build());
+            total += product.getPrice();
+        }
+        order.setTotalAmount(total);
+        orderRepository.save(order);
+        entityManager.flush();
+        entityManager.clear();
+    }
+}